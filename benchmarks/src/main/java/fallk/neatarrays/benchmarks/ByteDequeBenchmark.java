@@ -0,0 +1,219 @@
+package fallk.neatarrays.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fallk.neatarrays.ByteDeque;
+import fallk.neatarrays.ByteIterator;
+
+/**
+ * Benchmarks {@link ByteDeque} against {@code ArrayDeque<Byte>}.
+ * The {@code boxed*} methods are the baseline for the method of the same
+ * name without the prefix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteDequeBenchmark {
+
+    @Param({ "16", "1024", "65536" })
+    int size;
+
+    /** A deque holding {@code size} elements, kept at that size. */
+    ByteDeque deque;
+
+    ArrayDeque<Byte> boxed;
+
+    /** An element that is not in the deque. */
+    byte absent;
+
+    /** The deque in the compact serial form. */
+    byte[] serialized;
+
+    ByteArrayOutputStream bytes;
+
+    DataOutputStream data;
+
+    @Setup
+    public void setup() throws IOException {
+        deque = new ByteDeque();
+        boxed = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            deque.addLast(value(i));
+            boxed.addLast(value(i));
+        }
+        absent = (byte) 127;
+
+        bytes = new ByteArrayOutputStream();
+        data = new DataOutputStream(bytes);
+        deque.writeTo(data);
+        serialized = bytes.toByteArray();
+    }
+
+    /** The elements, all distinct from NULL_VALUE and from {@code absent}. */
+    static byte value(int i) {
+        return (byte) (i % 100 + 1);
+    }
+
+    // *** Both ends ***
+
+    @Benchmark
+    public byte addLastPollFirst() {
+        deque.addLast(absent);
+        return deque.pollFirst();
+    }
+
+    @Benchmark
+    public Byte boxedAddLastPollFirst() {
+        boxed.addLast(absent);
+        return boxed.pollFirst();
+    }
+
+    @Benchmark
+    public byte addFirstPollLast() {
+        deque.addFirst(absent);
+        return deque.pollLast();
+    }
+
+    @Benchmark
+    public Byte boxedAddFirstPollLast() {
+        boxed.addFirst(absent);
+        return boxed.pollLast();
+    }
+
+    // *** Growth: doubleCapacity() from the default capacity up to size ***
+
+    @Benchmark
+    public ByteDeque grow() {
+        ByteDeque d = new ByteDeque();
+        for (int i = 0; i < size; i++)
+            d.addLast(value(i));
+        return d;
+    }
+
+    @Benchmark
+    public ArrayDeque<Byte> boxedGrow() {
+        ArrayDeque<Byte> d = new ArrayDeque<>();
+        for (int i = 0; i < size; i++)
+            d.addLast(value(i));
+        return d;
+    }
+
+    // *** delete() in the middle, refilled at the tail ***
+
+    @Benchmark
+    public byte deleteMiddle() {
+        byte e = deque.removeAt(size >>> 1);
+        deque.addLast(e);
+        return e;
+    }
+
+    @Benchmark
+    public boolean boxedDeleteMiddle() {
+        // ArrayDeque cannot delete by index; this also pays for the search
+        Byte e = value(size >>> 1);
+        boolean removed = boxed.removeFirstOccurrence(e);
+        boxed.addLast(e);
+        return removed;
+    }
+
+    // *** Iteration ***
+
+    @Benchmark
+    public void iterator(Blackhole bh) {
+        for (ByteIterator it = deque.iterator(); it.hasNext(); )
+            bh.consume(it.next());
+    }
+
+    @Benchmark
+    public void spliterator(Blackhole bh) {
+        deque.spliterator().forEachRemaining((IntConsumer) bh::consume);
+    }
+
+    @Benchmark
+    public void boxedIterator(Blackhole bh) {
+        for (Byte e : boxed)
+            bh.consume(e.byteValue());
+    }
+
+    // *** contains, worst case ***
+
+    @Benchmark
+    public boolean contains() {
+        return deque.contains(absent);
+    }
+
+    @Benchmark
+    public boolean boxedContains() {
+        return boxed.contains(absent);
+    }
+
+    // *** clone ***
+
+    @Benchmark
+    public ByteDeque cloneDeque() {
+        return deque.clone();
+    }
+
+    @Benchmark
+    public ArrayDeque<Byte> boxedCloneDeque() {
+        return boxed.clone();
+    }
+
+    // *** Serialization ***
+
+    @Benchmark
+    public int writeTo() throws IOException {
+        bytes.reset();
+        deque.writeTo(data);
+        return bytes.size();
+    }
+
+    @Benchmark
+    public ByteDeque readFrom() throws IOException {
+        ByteDeque d = new ByteDeque();
+        d.readFrom(new DataInputStream(new ByteArrayInputStream(serialized)));
+        return d;
+    }
+
+    @Benchmark
+    public int writeObject() throws IOException {
+        bytes.reset();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(deque);
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int boxedWriteObject() throws IOException {
+        bytes.reset();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(boxed);
+        out.flush();
+        return bytes.size();
+    }
+}
@@ -0,0 +1,219 @@
+package fallk.neatarrays.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fallk.neatarrays.CharDeque;
+import fallk.neatarrays.CharIterator;
+
+/**
+ * Benchmarks {@link CharDeque} against {@code ArrayDeque<Character>}.
+ * The {@code boxed*} methods are the baseline for the method of the same
+ * name without the prefix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharDequeBenchmark {
+
+    @Param({ "16", "1024", "65536" })
+    int size;
+
+    /** A deque holding {@code size} elements, kept at that size. */
+    CharDeque deque;
+
+    ArrayDeque<Character> boxed;
+
+    /** An element that is not in the deque. */
+    char absent;
+
+    /** The deque in the compact serial form. */
+    byte[] serialized;
+
+    ByteArrayOutputStream bytes;
+
+    DataOutputStream data;
+
+    @Setup
+    public void setup() throws IOException {
+        deque = new CharDeque();
+        boxed = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            deque.addLast(value(i));
+            boxed.addLast(value(i));
+        }
+        absent = (char) 127;
+
+        bytes = new ByteArrayOutputStream();
+        data = new DataOutputStream(bytes);
+        deque.writeTo(data);
+        serialized = bytes.toByteArray();
+    }
+
+    /** The elements, all distinct from NULL_VALUE and from {@code absent}. */
+    static char value(int i) {
+        return (char) (i % 100 + 1);
+    }
+
+    // *** Both ends ***
+
+    @Benchmark
+    public char addLastPollFirst() {
+        deque.addLast(absent);
+        return deque.pollFirst();
+    }
+
+    @Benchmark
+    public Character boxedAddLastPollFirst() {
+        boxed.addLast(absent);
+        return boxed.pollFirst();
+    }
+
+    @Benchmark
+    public char addFirstPollLast() {
+        deque.addFirst(absent);
+        return deque.pollLast();
+    }
+
+    @Benchmark
+    public Character boxedAddFirstPollLast() {
+        boxed.addFirst(absent);
+        return boxed.pollLast();
+    }
+
+    // *** Growth: doubleCapacity() from the default capacity up to size ***
+
+    @Benchmark
+    public CharDeque grow() {
+        CharDeque d = new CharDeque();
+        for (int i = 0; i < size; i++)
+            d.addLast(value(i));
+        return d;
+    }
+
+    @Benchmark
+    public ArrayDeque<Character> boxedGrow() {
+        ArrayDeque<Character> d = new ArrayDeque<>();
+        for (int i = 0; i < size; i++)
+            d.addLast(value(i));
+        return d;
+    }
+
+    // *** delete() in the middle, refilled at the tail ***
+
+    @Benchmark
+    public char deleteMiddle() {
+        char e = deque.removeAt(size >>> 1);
+        deque.addLast(e);
+        return e;
+    }
+
+    @Benchmark
+    public boolean boxedDeleteMiddle() {
+        // ArrayDeque cannot delete by index; this also pays for the search
+        Character e = value(size >>> 1);
+        boolean removed = boxed.removeFirstOccurrence(e);
+        boxed.addLast(e);
+        return removed;
+    }
+
+    // *** Iteration ***
+
+    @Benchmark
+    public void iterator(Blackhole bh) {
+        for (CharIterator it = deque.iterator(); it.hasNext(); )
+            bh.consume(it.next());
+    }
+
+    @Benchmark
+    public void spliterator(Blackhole bh) {
+        deque.spliterator().forEachRemaining((IntConsumer) bh::consume);
+    }
+
+    @Benchmark
+    public void boxedIterator(Blackhole bh) {
+        for (Character e : boxed)
+            bh.consume(e.charValue());
+    }
+
+    // *** contains, worst case ***
+
+    @Benchmark
+    public boolean contains() {
+        return deque.contains(absent);
+    }
+
+    @Benchmark
+    public boolean boxedContains() {
+        return boxed.contains(absent);
+    }
+
+    // *** clone ***
+
+    @Benchmark
+    public CharDeque cloneDeque() {
+        return deque.clone();
+    }
+
+    @Benchmark
+    public ArrayDeque<Character> boxedCloneDeque() {
+        return boxed.clone();
+    }
+
+    // *** Serialization ***
+
+    @Benchmark
+    public int writeTo() throws IOException {
+        bytes.reset();
+        deque.writeTo(data);
+        return bytes.size();
+    }
+
+    @Benchmark
+    public CharDeque readFrom() throws IOException {
+        CharDeque d = new CharDeque();
+        d.readFrom(new DataInputStream(new ByteArrayInputStream(serialized)));
+        return d;
+    }
+
+    @Benchmark
+    public int writeObject() throws IOException {
+        bytes.reset();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(deque);
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int boxedWriteObject() throws IOException {
+        bytes.reset();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(boxed);
+        out.flush();
+        return bytes.size();
+    }
+}
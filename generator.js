@@ -3,36 +3,73 @@
 
 const fs = require('fs');
 
-// booleans are bytes are intentionally omitted, since they contain too little data
+// booleans are packed 64 to a long word by the hand-written BooleanDeque instead
 const primitives = [
-  "short", "int", "long", "float", "double", "char", 
+  "short", "int", "long", "float", "double", "char", "byte", 
 ];
 
 const capPrimitives = [
-  "Short", "Int", "Long", "Float", "Double", "Char", 
+  "Short", "Int", "Long", "Float", "Double", "Char", "Byte", 
 ];
 
 const wrapPrimitives = [
-  "Short", "Integer", "Long", "Float", "Double", "Character", 
+  "Short", "Integer", "Long", "Float", "Double", "Character", "Byte", 
 ];
 
-const files = fs.readdirSync('./generators/');
+// the java.util.function/java.util.stream specialization each type widens to
+const widePrimitives = [
+  "int", "int", "long", "double", "double", "int", "int", 
+];
+
+const capWidePrimitives = [
+  "Int", "Int", "Long", "Double", "Double", "Int", "Int", 
+];
 
-for (const file of files) {
-  const str = fs.readFileSync('./generators/' + file, 'utf8');
+// the type sums are accumulated in, as in the *SummaryStatistics classes
+const sumPrimitives = [
+  "long", "long", "long", "double", "double", "long", "long", 
+];
+
+// the ByteBuffer method giving a view of the type's buffer class
+const viewPrimitives = [
+  "asShortBuffer", "asIntBuffer", "asLongBuffer", "asFloatBuffer", "asDoubleBuffer", "asCharBuffer", "slice", 
+];
+
+// template directory -> output directory
+const targets = {
+  './generators/': './src/main/java/fallk/neatarrays/',
+  './benchmarks/generators/': './benchmarks/src/main/java/fallk/neatarrays/benchmarks/',
+};
+
+for (const dir of Object.keys(targets)) {
+  for (const file of fs.readdirSync(dir)) {
+    generate(dir + file, targets[dir], file);
+  }
+}
+
+function generate(path, outDir, file) {
+  const str = fs.readFileSync(path, 'utf8');
 
   const len = primitives.length;
 
   for (let i = 0; i < len; i++) {
-    let s = str.replace(/\$primitive\$/g, primitives[i])
+    // keep the lines between "//#if <type> [<type>...]" and "//#else" (or
+    // "//#endif") for the listed types only, and the lines between "//#else"
+    // and "//#endif" for the rest
+    let s = str.replace(/^[ \t]*\/\/#if (\w+(?: \w+)*)\r?\n([\s\S]*?)(?:^[ \t]*\/\/#else\r?\n([\s\S]*?))?^[ \t]*\/\/#endif\r?\n/gm,
+                        (block, types, body, otherwise) => types.split(' ').includes(primitives[i]) ? body : (otherwise || ''))
+               .replace(/\$primitive\$/g, primitives[i])
                .replace(/\$primitiveWrp\$/g, wrapPrimitives[i])
-               .replace(/\$primitiveFmt\$/g, capPrimitives[i]);
+               .replace(/\$primitiveFmt\$/g, capPrimitives[i])
+               .replace(/\$primitiveWide\$/g, widePrimitives[i])
+               .replace(/\$primitiveWideFmt\$/g, capWidePrimitives[i])
+               .replace(/\$primitiveSum\$/g, sumPrimitives[i])
+               .replace(/\$primitiveView\$/g, viewPrimitives[i]);
 
     let f = file.replace(/\$primitive\$/g, primitives[i])
                 .replace(/\$primitiveWrp\$/g, wrapPrimitives[i])
                 .replace(/\$primitiveFmt\$/g, capPrimitives[i]);
 
-    fs.writeFileSync('./src/main/java/club/bonerbrew/neatarrays/' + f, s);
+    fs.writeFileSync(outDir + f, s);
   }
-
-}
\ No newline at end of file
+}
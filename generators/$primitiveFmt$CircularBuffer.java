@@ -0,0 +1,306 @@
+package fallk.neatarrays;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * A fixed-capacity queue of {@code $primitive$}s that keeps the most recent
+ * elements: once it holds {@link #capacity()} elements, adding another one
+ * overwrites the oldest.
+ *
+ * <p>Elements are kept in a power-of-two ring, indexed by masking as in
+ * {@link $primitiveFmt$Deque}, that never grows.  Adding to a full buffer
+ * is a single store plus moving both ends, where a {@code $primitiveFmt$Deque}
+ * would need an {@code addLast} and a {@code pollFirst}.  Slots that do not
+ * hold elements are not kept at {@code NULL_VALUE}, so {@code NULL_VALUE}
+ * can be stored like any other value.  This class is not thread-safe.
+ */
+public class $primitiveFmt$CircularBuffer
+{
+    // the primitive value that represents 'null'
+    protected static final $primitive$ NULL_VALUE = $primitiveWrp$.MIN_VALUE;
+
+    /**
+     * The largest capacity a buffer can have.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final $primitive$[] elements;
+
+    private final int mask;
+
+    private final int capacity;
+
+    /**
+     * The index of the oldest element.
+     */
+    private int head;
+
+    /**
+     * The index at which the next element is stored.
+     */
+    private int tail;
+
+    private int size;
+
+    /**
+     * Constructs an empty buffer that keeps the specified number of most
+     * recent elements.
+     *
+     * @param capacity the number of elements to keep
+     * @throws IllegalArgumentException if the capacity is less than one or
+     *         more than 2<sup>30</sup>
+     */
+    public $primitiveFmt$CircularBuffer(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        int n = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        elements = new $primitive$[n];
+        mask = n - 1;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Inserts the specified element at the end of this buffer, overwriting
+     * the oldest element if the buffer is full.
+     *
+     * @param e the element to add
+     */
+    public void addLast($primitive$ e) {
+        elements[tail] = e;
+        tail = (tail + 1) & mask;
+        if (size == capacity)
+            head = (head + 1) & mask;
+        else
+            size++;
+    }
+
+    /**
+     * Inserts the specified element at the end of this buffer, and returns
+     * the oldest element if it had to be overwritten to make room.
+     *
+     * @param e the element to add
+     * @return the element that was evicted, or {@code NULL_VALUE} if the
+     *         buffer was not full
+     */
+    public $primitive$ addLastEvicting($primitive$ e) {
+        $primitive$ evicted = NULL_VALUE;
+        if (size == capacity) {
+            evicted = elements[head];
+            head = (head + 1) & mask;
+            size--;
+        }
+        elements[tail] = e;
+        tail = (tail + 1) & mask;
+        size++;
+        return evicted;
+    }
+
+    /**
+     * Inserts the specified element at the end of this buffer, overwriting
+     * the oldest element if the buffer is full.
+     *
+     * <p>This method is equivalent to {@link #addLast}.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean add($primitive$ e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the oldest element of this buffer, or returns
+     * {@code NULL_VALUE} if this buffer is empty.
+     *
+     * @return the oldest element of this buffer, or {@code NULL_VALUE} if
+     *         this buffer is empty
+     */
+    public $primitive$ pollFirst() {
+        if (size == 0)
+            return NULL_VALUE;
+        $primitive$ result = elements[head];
+        head = (head + 1) & mask;
+        size--;
+        return result;
+    }
+
+    /**
+     * Retrieves and removes the newest element of this buffer, or returns
+     * {@code NULL_VALUE} if this buffer is empty.
+     *
+     * @return the newest element of this buffer, or {@code NULL_VALUE} if
+     *         this buffer is empty
+     */
+    public $primitive$ pollLast() {
+        if (size == 0)
+            return NULL_VALUE;
+        tail = (tail - 1) & mask;
+        size--;
+        return elements[tail];
+    }
+
+    /**
+     * Retrieves and removes the oldest element of this buffer, or returns
+     * {@code NULL_VALUE} if this buffer is empty.
+     *
+     * <p>This method is equivalent to {@link #pollFirst}.
+     *
+     * @return the oldest element of this buffer, or {@code NULL_VALUE} if
+     *         this buffer is empty
+     */
+    public $primitive$ poll() {
+        return pollFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the oldest element of this buffer, or
+     * returns {@code NULL_VALUE} if this buffer is empty.
+     *
+     * @return the oldest element of this buffer, or {@code NULL_VALUE} if
+     *         this buffer is empty
+     */
+    public $primitive$ peekFirst() {
+        return size == 0 ? NULL_VALUE : elements[head];
+    }
+
+    /**
+     * Retrieves, but does not remove, the newest element of this buffer, or
+     * returns {@code NULL_VALUE} if this buffer is empty.
+     *
+     * @return the newest element of this buffer, or {@code NULL_VALUE} if
+     *         this buffer is empty
+     */
+    public $primitive$ peekLast() {
+        return size == 0 ? NULL_VALUE : elements[(tail - 1) & mask];
+    }
+
+    /**
+     * Retrieves, but does not remove, the oldest element of this buffer, or
+     * returns {@code NULL_VALUE} if this buffer is empty.
+     *
+     * <p>This method is equivalent to {@link #peekFirst}.
+     *
+     * @return the oldest element of this buffer, or {@code NULL_VALUE} if
+     *         this buffer is empty
+     */
+    public $primitive$ peek() {
+        return peekFirst();
+    }
+
+    /**
+     * Returns the element at the specified position in this buffer, where
+     * {@code 0} is the oldest element.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this buffer
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public $primitive$ get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return elements[(head + index) & mask];
+    }
+
+    /**
+     * Returns the number of elements in this buffer.
+     *
+     * @return the number of elements in this buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of elements this buffer keeps.
+     *
+     * @return the number of elements this buffer keeps
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns {@code true} if this buffer contains no elements.
+     *
+     * @return {@code true} if this buffer contains no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns {@code true} if adding an element to this buffer would evict
+     * the oldest one.
+     *
+     * @return {@code true} if this buffer holds {@link #capacity()} elements
+     */
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Removes all of the elements from this buffer.
+     */
+    public void clear() {
+        head = tail = size = 0;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this buffer, from
+     * oldest to newest.
+     *
+     * @return an array containing all of the elements in this buffer
+     */
+    public $primitive$[] toArray() {
+        $primitive$[] a = new $primitive$[size];
+        int r = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, a, 0, r);
+        System.arraycopy(elements, 0, a, r, size - r);
+        return a;
+    }
+
+    /**
+     * Returns an iterator over the elements in this buffer, from oldest to
+     * newest.
+     *
+     * @return an iterator over the elements in this buffer
+     */
+    public $primitiveFmt$Iterator iterator() {
+        return new BufIterator();
+    }
+
+    private class BufIterator implements $primitiveFmt$Iterator {
+        /**
+         * Index of element to be returned by subsequent call to next.
+         */
+        private int cursor = head;
+
+        /**
+         * Number of elements left to return.
+         */
+        private int remaining = size;
+
+        /**
+         * Tail recorded at construction, to check for comodification.
+         */
+        private final int fence = tail;
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        public $primitive$ next() {
+            if (remaining == 0)
+                throw new NoSuchElementException();
+            if (tail != fence)
+                throw new ConcurrentModificationException();
+            $primitive$ result = elements[cursor];
+            cursor = (cursor + 1) & mask;
+            remaining--;
+            return result;
+        }
+    }
+}
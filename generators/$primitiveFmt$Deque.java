@@ -37,11 +37,32 @@ package fallk.neatarrays;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+//#if char
+import java.io.Reader;
+import java.io.Writer;
+//#endif
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.$primitiveFmt$Buffer;
+//#if char
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+//#endif
+//#if byte
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+//#endif
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
+import java.util.$primitiveWideFmt$SummaryStatistics;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -50,7 +71,12 @@ import java.util.Queue;
 import java.util.Spliterator;
 import java.util.Stack;
 import java.util.function.Consumer;
+import java.util.function.$primitiveWideFmt$Consumer;
+import java.util.function.$primitiveWideFmt$Predicate;
+import java.util.stream.$primitiveWideFmt$Stream;
+import java.util.stream.StreamSupport;
 
+import fallk.neatarrays.DequeStats;
 import fallk.neatarrays.$primitiveFmt$Iterator;
 import fallk.neatarrays.$primitiveFmt$Spliterator;
 import fallk.dev.InternalAssert;
@@ -100,7 +126,11 @@ import fallk.dev.InternalAssert;
  * @since   1.6
  * @param <$primitive$> the type of elements held in this collection
  */
+//#if char
+public class $primitiveFmt$Deque implements Cloneable, Serializable, CharSequence, Appendable
+//#else
 public class $primitiveFmt$Deque implements Cloneable, Serializable
+//#endif
 {
     // the primitive value that represents 'null'
     protected static final $primitive$ NULL_VALUE = $primitiveWrp$.MIN_VALUE;
@@ -130,11 +160,41 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
      */
     transient int tail;
 
+    /**
+     * The fraction of the capacity below which the array is halved once
+     * elements are removed, or 0 if the deque never shrinks on its own.
+     * This is a setting of the instance rather than part of its contents,
+     * so it is not serialized.
+     */
+    private transient float shrinkThreshold;
+
+    /**
+     * The size below which removals shrink the array; kept in step with
+     * shrinkThreshold whenever the capacity changes, and 0 when the deque
+     * cannot or may not shrink.
+     */
+    private transient int shrinkSize;
+
+    /**
+     * The statistics of this deque, or {@code null} unless {@link
+     * #enableStats} was called while {@link DequeStats#ENABLED}.  Every hook
+     * tests {@code DequeStats.ENABLED} first, so they cost nothing when
+     * statistics are disabled.  Not serialized, and not shared by clones.
+     */
+    private transient DequeStats stats;
+
     /**
      * The minimum capacity that we'll use for a newly created deque.
      * Must be a power of 2.
      */
     private static final int MIN_INITIAL_CAPACITY = 8;
+
+    /**
+     * The largest allowed shrink threshold.  A deque shrunk below it is at
+     * most half full afterwards, so it has to double in size again before
+     * it grows, rather than thrashing between the two capacities.
+     */
+    public static final float MAX_SHRINK_THRESHOLD = 0.25f;
     
     /**
      * initialize a smaller piece of the array and use the System.arraycopy 
@@ -155,11 +215,12 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
     // ******  Array allocation and resizing utilities ******
 
     /**
-     * Allocates empty array to hold the given number of elements.
+     * Returns the smallest power of two large enough to hold the given
+     * number of elements without the array becoming full.
      *
      * @param numElements  the number of elements to hold
      */
-    private void allocateElements(int numElements) {
+    private static int calculateSize(int numElements) {
         int initialCapacity = MIN_INITIAL_CAPACITY;
         // Find the best power of two to hold elements.
         // Tests "<=" because arrays aren't kept full.
@@ -175,8 +236,20 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
             if (initialCapacity < 0)   // Too many elements, must back off
                 initialCapacity >>>= 1;// Good luck allocating 2 ^ 30 elements
         }
-        elements = new $primitive$[initialCapacity];
+        return initialCapacity;
+    }
+
+    /**
+     * Allocates empty array to hold the given number of elements.
+     *
+     * @param numElements  the number of elements to hold
+     */
+    private void allocateElements(int numElements) {
+        int oldCapacity = elements == null ? 0 : elements.length;
+        elements = new $primitive$[calculateSize(numElements)];
         shortFill(elements);
+        updateShrinkSize();
+        recordResize(oldCapacity);
     }
 
     /**
@@ -198,6 +271,138 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         elements = a;
         head = 0;
         tail = n;
+        updateShrinkSize();
+        recordResize(n);
+    }
+
+    /**
+     * Moves the elements into a new array of the given capacity, which must
+     * be a power of two larger than the current size.  The ring is
+     * linearised by the same copy, so the first element ends up at index 0.
+     */
+    private void reallocate(int newCapacity) {
+        int size = size();
+        int oldCapacity = elements.length;
+        $primitive$[] a = new $primitive$[newCapacity];
+        shortFill(a);
+        copyElements(a);
+        elements = a;
+        head = 0;
+        tail = size;
+        updateShrinkSize();
+        recordResize(oldCapacity);
+    }
+
+    private void recordResize(int oldCapacity) {
+        if (DequeStats.ENABLED && stats != null)
+            stats.recordResize(oldCapacity, elements.length, size());
+    }
+
+    private void recordSize() {
+        if (DequeStats.ENABLED && stats != null)
+            stats.recordSize(size());
+    }
+
+    private void updateShrinkSize() {
+        int n = elements.length;
+        shrinkSize = n > MIN_INITIAL_CAPACITY ? (int) (n * shrinkThreshold) : 0;
+    }
+
+    /**
+     * Halves the array, as many times as the shrink threshold calls for,
+     * in a single reallocation.  Called after removals when automatic
+     * shrinking is enabled.
+     */
+    private void shrinkIfSparse() {
+        int size = size();
+        if (size >= shrinkSize)
+            return;
+        int n = elements.length >>> 1;
+        while (n > MIN_INITIAL_CAPACITY && size < (int) (n * shrinkThreshold))
+            n >>>= 1;
+        reallocate(n);
+    }
+
+    /**
+     * Grows the array, at most once, so that {@code n} more elements can be
+     * added without any further resizing.
+     */
+    private void reserve(int n) {
+        int required = size() + n;
+        if (required < 0)
+            throw new IllegalStateException("Sorry, deque too big");
+        ensureCapacity(required);
+    }
+
+    /**
+     * Copies {@code len} elements of {@code src} into the ring starting at
+     * index {@code dst}, wrapping around the end of the array if needed.
+     * The caller must already have made room for them.
+     */
+    private void copyIn($primitive$[] src, int srcPos, int dst, int len) {
+        $primitive$[] a = elements;
+        int r = Math.min(len, a.length - dst); // slots to the right of dst
+        System.arraycopy(src, srcPos, a, dst, r);
+        System.arraycopy(src, srcPos + r, a, 0, len - r);
+    }
+
+    /**
+     * Copies all elements of {@code d}, in order, into the ring starting at
+     * index {@code dst}.  The caller must already have made room for them.
+     * {@code d} may be this deque, since only free slots are written to.
+     */
+    private void copyIn($primitiveFmt$Deque d, int dst) {
+        copyIn(d, 0, d.size(), dst);
+    }
+
+    /**
+     * Copies {@code len} elements of {@code d}, starting with the one at
+     * index {@code from}, in order into the ring starting at index {@code
+     * dst}.  The caller must already have made room for them.  {@code d} may
+     * be this deque, since only free slots are written to.
+     */
+    private void copyIn($primitiveFmt$Deque d, int from, int len, int dst) {
+        $primitive$[] src = d.elements;
+        int s = (d.head + from) & (src.length - 1);
+        int r = Math.min(len, src.length - s); // elements to the right of s
+        copyIn(src, s, dst, r);
+        copyIn(src, 0, (dst + r) & (elements.length - 1), len - r);
+    }
+
+    /**
+     * Copies {@code len} elements of the ring, starting at index {@code src}
+     * and wrapping around the end of the array if needed, into {@code dst}.
+     */
+    private void copyOut(int src, $primitive$[] dst, int dstPos, int len) {
+        $primitive$[] a = elements;
+        int r = Math.min(len, a.length - src); // slots to the right of src
+        System.arraycopy(a, src, dst, dstPos, r);
+        System.arraycopy(a, 0, dst, dstPos + r, len - r);
+    }
+
+    /**
+     * Resets {@code len} slots of the ring, starting at index {@code from}
+     * and wrapping around the end of the array if needed, to
+     * {@code NULL_VALUE}.
+     */
+    private void clearRange(int from, int len) {
+        $primitive$[] a = elements;
+        int r = Math.min(len, a.length - from);
+        Arrays.fill(a, from, from + r, NULL_VALUE);
+        Arrays.fill(a, 0, len - r, NULL_VALUE);
+    }
+
+    /**
+     * Removes the first {@code n} elements, of which there must be at least
+     * that many, and shrinks the array if automatic shrinking calls for it.
+     * The common tail of the bulk removal methods.
+     */
+    private void discardFirst(int n) {
+        int h = head;
+        clearRange(h, n);
+        head = (h + n) & (elements.length - 1);
+        if (shrinkSize != 0)
+            shrinkIfSparse();
     }
 
     /**
@@ -253,11 +458,119 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
     }
 
     public void addAll(Collection<$primitiveWrp$> c) {
+        reserve(c.size());
         for ($primitiveWrp$ s : c) {
             add(s);
         }
     }
 
+    /**
+     * Inserts the elements of the specified array at the end of this deque,
+     * in array order.  The deque is grown at most once, straight to the
+     * capacity needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllLast($primitive$[] a) {
+        addAllLast(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the end of this deque, in array order.  The deque is
+     * grown at most once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllLast($primitive$[] a, int off, int len) {
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int t = tail;
+        copyIn(a, off, t, len);
+        tail = (t + len) & (elements.length - 1);
+        recordSize();
+    }
+
+    /**
+     * Inserts all elements of the specified deque at the end of this deque,
+     * in the order they appear in {@code d}.  The deque is grown at most
+     * once, straight to the capacity needed.
+     *
+     * @param d the deque whose elements are to be added; may be this deque
+     */
+    public void addAllLast($primitiveFmt$Deque d) {
+        int n = d.size();
+        if (n == 0)
+            return;
+        reserve(n);
+        int t = tail;
+        copyIn(d, t);
+        tail = (t + n) & (elements.length - 1);
+        recordSize();
+    }
+
+    /**
+     * Inserts the elements of the specified array at the front of this
+     * deque.  The array order is kept, so {@code a[0]} becomes the first
+     * element.  The deque is grown at most once, straight to the capacity
+     * needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllFirst($primitive$[] a) {
+        addAllFirst(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the front of this deque.  The array order is kept, so
+     * {@code a[off]} becomes the first element.  The deque is grown at most
+     * once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllFirst($primitive$[] a, int off, int len) {
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int h = (head - len) & (elements.length - 1);
+        copyIn(a, off, h, len);
+        head = h;
+        recordSize();
+    }
+
+    /**
+     * Inserts all elements of the specified deque at the front of this
+     * deque.  Their order is kept, so the first element of {@code d} becomes
+     * the first element of this deque.  The deque is grown at most once,
+     * straight to the capacity needed.
+     *
+     * @param d the deque whose elements are to be added; may be this deque
+     */
+    public void addAllFirst($primitiveFmt$Deque d) {
+        int n = d.size();
+        if (n == 0)
+            return;
+        reserve(n);
+        int h = (head - n) & (elements.length - 1);
+        copyIn(d, h);
+        head = h;
+        recordSize();
+    }
+
     // The main insertion and extraction methods are addFirst,
     // addLast, pollFirst, pollLast. The other methods are defined in
     // terms of these.
@@ -272,6 +585,7 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         elements[head = (head - 1) & (elements.length - 1)] = e;
         if (head == tail)
             doubleCapacity();
+        recordSize();
     }
 
     /**
@@ -286,6 +600,7 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         elements[tail] = e;
         if ( (tail = (tail + 1) & (elements.length - 1)) == head)
             doubleCapacity();
+        recordSize();
     }
 
     /**
@@ -340,6 +655,8 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         $primitive$ result = elements[h];
         elements[h] = NULL_VALUE; // Must NULL_VALUE out slot
         head = (h + 1) & (elements.length - 1);
+        if (shrinkSize != 0)
+            shrinkIfSparse();
         return result;
     }
 
@@ -353,9 +670,77 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         $primitive$ result = elements[t];
         elements[t] = NULL_VALUE; // Must NULL_VALUE out slot
         tail = t;
+        if (shrinkSize != 0)
+            shrinkIfSparse();
         return result;
     }
 
+    /**
+     * Retrieves and removes up to {@code max} elements from the head of this
+     * deque, storing them in order in {@code dst} starting at {@code off}.
+     * The elements are moved with at most two array copies, and head is
+     * advanced once.
+     *
+     * @param dst the array to store the elements in
+     * @param off the index in {@code dst} of the first element
+     * @param max the maximum number of elements to remove
+     * @return the number of elements removed, which is {@code 0} if this
+     *         deque is empty
+     * @throws IndexOutOfBoundsException if {@code off} or {@code max} is
+     *         negative, or {@code off + max} is greater than {@code dst.length}
+     */
+    public int pollFirst($primitive$[] dst, int off, int max) {
+        if (off < 0 || max < 0 || max > dst.length - off)
+            throw new IndexOutOfBoundsException();
+        int n = Math.min(max, size());
+        if (n == 0)
+            return 0;
+        copyOut(head, dst, off, n);
+        discardFirst(n);
+        return n;
+    }
+
+    /**
+     * Removes all elements of this deque and adds them, in order, to the end
+     * of the specified deque.
+     *
+     * @param d the deque to transfer the elements to
+     * @return the number of elements transferred
+     * @throws IllegalArgumentException if {@code d} is this deque
+     */
+    public int drainTo($primitiveFmt$Deque d) {
+        return drainTo(d, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes up to {@code max} elements from the head of this deque and
+     * adds them, in order, to the end of the specified deque.  The target is
+     * grown at most once, and the elements are moved segment by segment
+     * rather than one at a time.
+     *
+     * @param d the deque to transfer the elements to
+     * @param max the maximum number of elements to transfer
+     * @return the number of elements transferred
+     * @throws IllegalArgumentException if {@code d} is this deque
+     */
+    public int drainTo($primitiveFmt$Deque d, int max) {
+        if (d == this)
+            throw new IllegalArgumentException();
+        int n = Math.min(max, size());
+        if (n <= 0)
+            return 0;
+        d.reserve(n);
+        int h = head;
+        int t = d.tail;
+        int r = Math.min(n, elements.length - h); // elements to the right of h
+        d.copyIn(elements, h, t, r);
+        d.copyIn(elements, 0, (t + r) & (d.elements.length - 1), n - r);
+        d.tail = (t + n) & (d.elements.length - 1);
+        d.recordSize();
+        discardFirst(n);
+        return n;
+    }
+
     /**
      * @throws NoSuchElementException if this deque is empty
      */
@@ -501,6 +886,7 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
     }
 
     void checkInvariants() {
+        assert (elements.length & (elements.length - 1)) == 0;
         assert elements[tail] == NULL_VALUE;
         assert head == tail ? elements[head] == NULL_VALUE :
             (elements[head] != NULL_VALUE &&
@@ -509,6 +895,7 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
     }
 
     public void jUnitAssertInvariants() {
+        InternalAssert.assertTrue((elements.length & (elements.length - 1)) == 0);
         InternalAssert.assertTrue(elements[tail] == NULL_VALUE);
         InternalAssert.assertTrue(head == tail ? elements[head] == NULL_VALUE :
             (elements[head] != NULL_VALUE &&
@@ -585,6 +972,99 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         return elements.length;
     }
 
+    /**
+     * Starts collecting {@link DequeStats statistics} on this deque, if
+     * statistics are {@link DequeStats#ENABLED enabled}; otherwise does
+     * nothing.  The current array counts as the first allocation.  Calling
+     * this method again keeps the statistics already collected.
+     *
+     * @return the statistics of this deque, or {@code null} if statistics
+     *         are disabled
+     */
+    public DequeStats enableStats() {
+        if (DequeStats.ENABLED && stats == null)
+            stats = new DequeStats($primitiveWrp$.BYTES, elements.length, size());
+        return stats;
+    }
+
+    /**
+     * Returns the statistics of this deque, with its current size sampled
+     * into them, or {@code null} if they were never {@link #enableStats
+     * enabled}.
+     *
+     * @return the statistics of this deque, or {@code null}
+     */
+    public DequeStats stats() {
+        DequeStats s = stats;
+        if (s != null)
+            s.recordSize(size());
+        return s;
+    }
+
+    /**
+     * Increases the capacity of this deque, if necessary, so that it can
+     * hold at least {@code minCapacity} elements without growing again.
+     * The array is reallocated at most once, straight to the required power
+     * of two, and the ring is linearised by the same copy.
+     *
+     * <p>If automatic shrinking is enabled, removing elements before the
+     * capacity is used may shrink the deque again.
+     *
+     * @param minCapacity the desired minimum capacity
+     * @throws IllegalStateException if {@code minCapacity} is more than the
+     *         largest deque can hold
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity < elements.length)
+            return;
+        int newCapacity = calculateSize(minCapacity);
+        if (newCapacity <= minCapacity)
+            throw new IllegalStateException("Sorry, deque too big");
+        reallocate(newCapacity);
+    }
+
+    /**
+     * Shrinks the capacity of this deque to the smallest power of two that
+     * holds its current elements.  An application can use this operation to
+     * release the memory left behind by a burst of elements.
+     */
+    public void trimToSize() {
+        int n = calculateSize(size());
+        if (n < elements.length)
+            reallocate(n);
+    }
+
+    /**
+     * Enables or disables automatic shrinking.  When enabled, removing an
+     * element from a deque that is less than {@code threshold} full halves
+     * its capacity (repeatedly, if need be, but in one reallocation), never
+     * going below the minimum capacity.  Since a shrunk deque is at most
+     * half full, it does not grow again until it has doubled in size.
+     *
+     * <p>The setting is not serialized and starts out disabled.
+     *
+     * @param threshold the fraction of the capacity below which the deque
+     *        shrinks, or {@code 0} to disable automatic shrinking
+     * @throws IllegalArgumentException if {@code threshold} is negative or
+     *         greater than {@link #MAX_SHRINK_THRESHOLD}
+     */
+    public void setShrinkThreshold(float threshold) {
+        if (!(threshold >= 0 && threshold <= MAX_SHRINK_THRESHOLD))
+            throw new IllegalArgumentException("Illegal shrink threshold: " + threshold);
+        shrinkThreshold = threshold;
+        updateShrinkSize();
+    }
+
+    /**
+     * Returns the fraction of the capacity below which this deque shrinks,
+     * or {@code 0} if automatic shrinking is disabled.
+     *
+     * @return the shrink threshold of this deque
+     */
+    public float getShrinkThreshold() {
+        return shrinkThreshold;
+    }
+
     /**
      * Returns {@code true} if this deque contains no elements.
      *
@@ -703,14 +1183,59 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
      * @return {@code true} if this deque contains the specified element
      */
     public boolean contains($primitive$ o) {
-        if (head == tail) return false;
-        $primitive$ s = NULL_VALUE;
-        for ($primitiveFmt$Iterator it = this.iterator(); it.hasNext(); s = it.next()) {
-            if (s == o) {
-                return true;
-            }
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * <p>The ring is searched as at most two contiguous runs of the array,
+     * with plain counted loops the JIT can unroll.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the element, or -1
+     */
+    public int indexOf($primitive$ o) {
+        final $primitive$[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        for (int i = h; i < end; i++)
+            if (es[i] == o)
+                return i - h;
+        if (h > t) { // wrapped; continue at the start of the array
+            for (int i = 0; i < t; i++)
+                if (es[i] == o)
+                    return es.length - h + i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the element, or -1
+     * @see #indexOf($primitive$)
+     */
+    public int lastIndexOf($primitive$ o) {
+        final $primitive$[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h > t) { // wrapped; start with the run at the start of the array
+            for (int i = t - 1; i >= 0; i--)
+                if (es[i] == o)
+                    return es.length - h + i;
         }
-        return false;
+        final int end = h <= t ? t : es.length;
+        for (int i = end - 1; i >= h; i--)
+            if (es[i] == o)
+                return i - h;
+        return -1;
     }
 
     /**
@@ -727,127 +1252,1130 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
      * @return {@code true} if this deque contained the specified element
      */
     public boolean remove($primitive$ o) {
-        int h = head;
-        int t = tail;
-        if (h != t) { // clear all cells
-            int ord = 0;//ordered index
-            int i = h;
-            int mask = elements.length - 1;
-            do {
-                if (elements[i] == o) {
-                    delete(ord);
-                    return true;
-                }
-                i = (i + 1) & mask;
-                ord++;
-            } while (i != t);
-            //for testing
-            //Assert.assertTrue(ord == size());
-        }
-        
-        return false;
-    }
-
-    public void removeAt(int i) {
-        delete(i);
+        return removeFirstOccurrence(o);
     }
 
     /**
-     * Removes all of the elements from this deque.
-     * The deque will be empty after this call returns.
+     * Removes the first occurrence of the specified element in this
+     * deque (when traversing the deque from head to tail).
+     * If the deque does not contain the element, it is unchanged.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return {@code true} if the deque contained the specified element
      */
-    public void clear() {
-        int h = head;
-        int t = tail;
-        if (h != t) { // clear all cells
-            head = tail = 0;
-            int i = h;
-            int mask = elements.length - 1;
-            do {
-                elements[i] = NULL_VALUE;
-                i = (i + 1) & mask;
-            } while (i != t);
-        }
+    public boolean removeFirstOccurrence($primitive$ o) {
+        int i = indexOf(o);
+        if (i < 0)
+            return false;
+        delete((head + i) & (elements.length - 1));
+        return true;
     }
 
     /**
-     * Returns an array containing all of the elements in this deque
-     * in proper sequence (from first to last element).
-     *
-     * <p>The returned array will be "safe" in that no references to it are
-     * maintained by this deque.  (In other words, this method must allocate
-     * a new array).  The caller is thus free to modify the returned array.
-     *
-     * <p>This method acts as bridge between array-based and collection-based
-     * APIs.
+     * Removes the last occurrence of the specified element in this
+     * deque (when traversing the deque from head to tail).
+     * If the deque does not contain the element, it is unchanged.
      *
-     * @return an array containing all of the elements in this deque
+     * @param o element to be removed from this deque, if present
+     * @return {@code true} if the deque contained the specified element
      */
-    public $primitive$[] toArray() {
-        return copyElements(new $primitive$[size()]);
+    public boolean removeLastOccurrence($primitive$ o) {
+        int i = lastIndexOf(o);
+        if (i < 0)
+            return false;
+        delete((head + i) & (elements.length - 1));
+        return true;
     }
 
-    // *** $primitive$ methods ***
-
     /**
-     * Returns a copy of this deque.
+     * Removes all of the elements of this deque that satisfy the given
+     * predicate.  The survivors are compacted towards the head in a single
+     * pass, and only the slots freed at the tail are reset afterwards.
      *
-     * @return a copy of this deque
+     * <p>If the predicate throws, the elements it has not been applied to
+     * yet are kept, and the exception is relayed to the caller.
+     *
+     * @param filter a predicate which returns {@code true} for elements to
+     *        be removed
+     * @return {@code true} if any elements were removed
+     * @throws NullPointerException if the specified filter is null
      */
-    public $primitiveFmt$Deque clone() {
+    public boolean removeIf($primitiveWideFmt$Predicate filter) {
+        if (filter == null)
+            throw new NullPointerException();
+        final $primitive$[] es = elements;
+        final int mask = es.length - 1;
+        final int t = tail;
+        int i = head;
+        // The leading run of survivors stays where it is
+        while (i != t && !filter.test(es[i]))
+            i = (i + 1) & mask;
+        if (i == t)
+            return false;
+        int w = i; // where the next survivor goes
         try {
-            
-            $primitiveFmt$Deque result = ($primitiveFmt$Deque) super.clone();
-            result.elements = Arrays.copyOf(elements, elements.length);
-            return result;
-        } catch (CloneNotSupportedException e) {
-            throw new AssertionError();
+            for (i = (i + 1) & mask; i != t; i = (i + 1) & mask) {
+                $primitive$ e = es[i];
+                if (!filter.test(e)) {
+                    es[w] = e;
+                    w = (w + 1) & mask;
+                }
+            }
+        } finally {
+            // Only does anything if the filter threw
+            for (; i != t; i = (i + 1) & mask, w = (w + 1) & mask)
+                es[w] = es[i];
+            clearRange(w, (t - w) & mask);
+            tail = w;
         }
+        if (shrinkSize != 0)
+            shrinkIfSparse();
+        return true;
     }
 
-    private static final long serialVersionUID = 2340985798034038923L;
-
     /**
-     * Saves this deque to a stream (that is, serializes it).
+     * Removes all of the elements of this deque that are also contained in
+     * the specified array.  Membership is decided as by {@link
+     * Arrays#binarySearch($primitive$[], $primitive$)} on a sorted copy of the
+     * array, so the whole operation takes O((n + m) log m) time.
      *
-     * @serialData The current size ({@code int}) of the deque,
-     * followed by all of its elements (each an object reference) in
-     * first-to-last order.
+     * @param a array containing the elements to be removed from this deque
+     * @return {@code true} if this deque changed as a result of the call
      */
-    private void writeObject(java.io.ObjectOutputStream s)
-            throws java.io.IOException {
-        s.defaultWriteObject();
-
-        // Write out size
-        s.writeInt(size());
-
-        // Write out elements in order.
-        int mask = elements.length - 1;
-        for (int i = head; i != tail; i = (i + 1) & mask)
-            s.writeObject(elements[i]);
+    public boolean removeAll($primitive$[] a) {
+        return removeIfContained(a.clone(), true);
     }
 
     /**
-     * Reconstitutes this deque from a stream (that is, deserializes it).
+     * Removes all of the elements of this deque that are also contained in
+     * the specified deque.
+     *
+     * @param d deque containing the elements to be removed from this deque;
+     *        may be this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @see #removeAll($primitive$[])
      */
-    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
-        s.defaultReadObject();
-
-        // Read in size and allocate array
-        int size = s.readInt();
-        allocateElements(size);
-        head = 0;
-        tail = size;
-
-        // Read in all elements in the proper order.
-        for (int i = 0; i < size; i++)
-            elements[i] = s.read$primitiveFmt$();
+    public boolean removeAll($primitiveFmt$Deque d) {
+        return removeIfContained(d.toArray(), true);
     }
 
     /**
-     * Creates a <em><a href="Spliterator.html#binding">late-binding</a></em>
-     * and <em>fail-fast</em> {@link Spliterator} over the elements in this
-     * deque.
+     * Retains only the elements of this deque that are contained in the
+     * specified array.  Membership is decided as by {@link
+     * Arrays#binarySearch($primitive$[], $primitive$)} on a sorted copy of the
+     * array, so the whole operation takes O((n + m) log m) time.
+     *
+     * @param a array containing the elements to be retained in this deque
+     * @return {@code true} if this deque changed as a result of the call
+     */
+    public boolean retainAll($primitive$[] a) {
+        return removeIfContained(a.clone(), false);
+    }
+
+    /**
+     * Retains only the elements of this deque that are contained in the
+     * specified deque.
+     *
+     * @param d deque containing the elements to be retained in this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @see #retainAll($primitive$[])
+     */
+    public boolean retainAll($primitiveFmt$Deque d) {
+        return removeIfContained(d.toArray(), false);
+    }
+
+    /**
+     * Removes the elements whose presence in {@code a}, which is sorted in
+     * place, equals {@code contained}.
+     */
+    private boolean removeIfContained($primitive$[] a, boolean contained) {
+        Arrays.sort(a);
+//#if short char byte float
+        return removeIf(e -> (Arrays.binarySearch(a, ($primitive$) e) >= 0) == contained);
+//#else
+        return removeIf(e -> (Arrays.binarySearch(a, e) >= 0) == contained);
+//#endif
+    }
+
+    /**
+     * Removes the element at the specified position in this deque, counting
+     * from the head.  Whichever side of the element is shorter is shifted
+     * to close the gap.
+     *
+     * @param index the index of the element to be removed
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public $primitive$ removeAt(int index) {
+        checkIndex(index);
+        int i = (head + index) & (elements.length - 1);
+        $primitive$ result = elements[i];
+        delete(i);
+        return result;
+    }
+
+    /**
+     * Returns the element at the specified position in this deque, counting
+     * from the head.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this deque
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public $primitive$ get(int index) {
+        checkIndex(index);
+        return elements[(head + index) & (elements.length - 1)];
+    }
+
+    /**
+     * Replaces the element at the specified position in this deque, counting
+     * from the head, with the specified element.
+     *
+     * @param index index of the element to replace
+     * @param e element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public $primitive$ set(int index, $primitive$ e) {
+        checkIndex(index);
+        int i = (head + index) & (elements.length - 1);
+        $primitive$ result = elements[i];
+        elements[i] = e;
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        int size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Removes all of the elements from this deque.
+     * The deque will be empty after this call returns.
+     */
+    public void clear() {
+        int h = head;
+        int t = tail;
+        if (h != t) { // clear all cells
+            head = tail = 0;
+            int i = h;
+            int mask = elements.length - 1;
+            do {
+                elements[i] = NULL_VALUE;
+                i = (i + 1) & mask;
+            } while (i != t);
+            if (shrinkSize != 0)
+                shrinkIfSparse();
+        }
+    }
+
+    // *** Aggregate methods ***
+
+    /**
+     * Returns the sum of the elements in this deque, or {@code 0} if it is
+     * empty.  The elements are summed in place, without boxing or copying.
+//#if float double
+     * The sum is compensated, as by {@link DoubleSummaryStatistics#getSum},
+     * so it agrees with {@link #parallelSum()} up to the order of addition.
+//#endif
+     *
+     * @return the sum of the elements in this deque
+     */
+    public $primitiveSum$ sum() {
+//#if float double
+        return summaryStatistics().getSum();
+    }
+//#else
+        final $primitive$[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        $primitiveSum$ sum = 0;
+        for (int i = h; i < end; i++)
+            sum += es[i];
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                sum += es[i];
+        }
+        return sum;
+    }
+//#endif
+
+    /**
+     * Returns the smallest element in this deque, as by {@link Math#min}.
+     *
+     * @return the smallest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public $primitive$ min() {
+        final $primitive$[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h == t) // isEmpty()
+            throw new NoSuchElementException();
+        final int end = h <= t ? t : es.length;
+        $primitive$ min = es[h];
+        for (int i = h + 1; i < end; i++)
+//#if short char byte
+            min = ($primitive$) Math.min(min, es[i]);
+//#else
+            min = Math.min(min, es[i]);
+//#endif
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+//#if short char byte
+                min = ($primitive$) Math.min(min, es[i]);
+//#else
+                min = Math.min(min, es[i]);
+//#endif
+        }
+        return min;
+    }
+
+    /**
+     * Returns the largest element in this deque, as by {@link Math#max}.
+     *
+     * @return the largest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public $primitive$ max() {
+        final $primitive$[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h == t) // isEmpty()
+            throw new NoSuchElementException();
+        final int end = h <= t ? t : es.length;
+        $primitive$ max = es[h];
+        for (int i = h + 1; i < end; i++)
+//#if short char byte
+            max = ($primitive$) Math.max(max, es[i]);
+//#else
+            max = Math.max(max, es[i]);
+//#endif
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+//#if short char byte
+                max = ($primitive$) Math.max(max, es[i]);
+//#else
+                max = Math.max(max, es[i]);
+//#endif
+        }
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of the elements in this deque.
+     *
+     * @return the average of the elements in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public double average() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+//#if float double
+        return sum() / size();
+//#else
+        return (double) sum() / size();
+//#endif
+    }
+
+    /**
+     * Returns the count, sum, min, max and average of the elements in this
+     * deque, gathered in a single pass.
+     *
+     * @return the summary statistics of the elements in this deque
+     */
+    public $primitiveWideFmt$SummaryStatistics summaryStatistics() {
+        final $primitive$[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        $primitiveWideFmt$SummaryStatistics stats = new $primitiveWideFmt$SummaryStatistics();
+        for (int i = h; i < end; i++)
+            stats.accept(es[i]);
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                stats.accept(es[i]);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the sum of the elements in this deque, computed in parallel
+     * on the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the sum of the elements in this deque
+     * @see #sum()
+     */
+    public $primitiveSum$ parallelSum() {
+        return parallelSummaryStatistics().getSum();
+    }
+
+    /**
+     * Returns the smallest element in this deque, computed in parallel on
+     * the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the smallest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #min()
+     */
+    public $primitive$ parallelMin() {
+//#if short char byte float
+        return ($primitive$) parallelStream().min().getAs$primitiveWideFmt$();
+//#else
+        return parallelStream().min().getAs$primitiveWideFmt$();
+//#endif
+    }
+
+    /**
+     * Returns the largest element in this deque, computed in parallel on
+     * the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the largest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #max()
+     */
+    public $primitive$ parallelMax() {
+//#if short char byte float
+        return ($primitive$) parallelStream().max().getAs$primitiveWideFmt$();
+//#else
+        return parallelStream().max().getAs$primitiveWideFmt$();
+//#endif
+    }
+
+    /**
+     * Returns the arithmetic mean of the elements in this deque, computed
+     * in parallel on the common fork-join pool.  Only worthwhile for very
+     * large deques.
+     *
+     * @return the average of the elements in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #average()
+     */
+    public double parallelAverage() {
+        return parallelStream().average().getAsDouble();
+    }
+
+    /**
+     * Returns the summary statistics of the elements in this deque,
+     * computed in parallel on the common fork-join pool.  Only worthwhile
+     * for very large deques.
+     *
+     * @return the summary statistics of the elements in this deque
+     * @see #summaryStatistics()
+     */
+    public $primitiveWideFmt$SummaryStatistics parallelSummaryStatistics() {
+        return parallelStream().summaryStatistics();
+    }
+
+    // *** Sorting and searching ***
+
+    /**
+     * Moves the elements to the start of the array, so that head is 0 and
+     * they occupy {@code elements[0, size)} in order.
+     */
+    private void linearize() {
+        int h = head;
+        int t = tail;
+        if (h == 0)
+            return;
+        if (h < t) {
+            int size = t - h;
+            System.arraycopy(elements, h, elements, 0, size);
+            Arrays.fill(elements, Math.max(size, h), t, NULL_VALUE);
+            head = 0;
+            tail = size;
+        } else if (h == t) { // isEmpty()
+            head = tail = 0;
+        } else {
+            // rotate the whole array left by h, without a second array:
+            // [tail part, free, head part] becomes [head part, tail part, free]
+            $primitive$[] a = elements;
+            int size = size();
+            reverse(a, 0, h);
+            reverse(a, h, a.length);
+            reverse(a, 0, a.length);
+            head = 0;
+            tail = size;
+        }
+    }
+
+    /**
+     * Reverses the order of {@code a[from, to)} in place.
+     */
+    private static void reverse($primitive$[] a, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            $primitive$ x = a[i];
+            a[i] = a[j];
+            a[j] = x;
+        }
+    }
+
+    /**
+     * Sorts the elements of this deque into ascending numerical order, as
+     * by {@link Arrays#sort($primitive$[])}.  The ring is first linearised in
+     * place, so the first element ends up at the start of the array, and
+     * then sorted there without copying it out.
+     */
+    public void sort() {
+        linearize();
+        Arrays.sort(elements, 0, tail);
+    }
+
+    /**
+     * Sorts the elements of this deque into ascending numerical order, as
+     * by {@link Arrays#parallelSort($primitive$[])}.  This is {@link #sort()}
+     * on the common fork-join pool, and is only worthwhile for very large
+     * deques.
+     */
+    public void parallelSort() {
+        linearize();
+        Arrays.parallelSort(elements, 0, tail);
+    }
+
+    /**
+     * Searches this deque for the specified value using the binary search
+     * algorithm.  The deque must be sorted (as by {@link #sort()}) prior to
+     * making this call; elements may have been added or removed at either
+     * end since, as long as the order is kept.  If it is not sorted, the
+     * results are undefined.  If the deque contains multiple elements with
+     * the specified value, there is no guarantee which one will be found.
+     *
+     * @param key the value to be searched for
+     * @return index of the search key, counting from the head, if it is
+     *         contained in the deque; otherwise,
+     *         <tt>(-(<i>insertion point</i>) - 1)</tt>, as in {@link
+     *         Arrays#binarySearch($primitive$[], $primitive$)}
+     */
+    public int binarySearch($primitive$ key) {
+        final $primitive$[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h <= t) {
+            int r = Arrays.binarySearch(es, h, t, key);
+            return r >= 0 ? r - h : r + h;
+        }
+        // wrapped; [h, es.length) holds the smaller half, [0, t) the larger
+        if (t > 0 && $primitiveWrp$.compare(key, es[0]) >= 0) {
+            int offset = es.length - h;
+            int r = Arrays.binarySearch(es, 0, t, key);
+            return r >= 0 ? r + offset : r - offset;
+        }
+        int r = Arrays.binarySearch(es, h, es.length, key);
+        return r >= 0 ? r - h : r + h;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this deque
+     * in proper sequence (from first to last element).
+     *
+     * <p>The returned array will be "safe" in that no references to it are
+     * maintained by this deque.  (In other words, this method must allocate
+     * a new array).  The caller is thus free to modify the returned array.
+     *
+     * <p>This method acts as bridge between array-based and collection-based
+     * APIs.
+     *
+     * @return an array containing all of the elements in this deque
+     */
+    public $primitive$[] toArray() {
+        return copyElements(new $primitive$[size()]);
+    }
+
+    // *** $primitive$ methods ***
+
+    /**
+     * Returns a copy of this deque.
+     *
+     * @return a copy of this deque
+     */
+    public $primitiveFmt$Deque clone() {
+        try {
+            
+            $primitiveFmt$Deque result = ($primitiveFmt$Deque) super.clone();
+            result.elements = Arrays.copyOf(elements, elements.length);
+            result.stats = null;
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError();
+        }
+    }
+
+    private static final long serialVersionUID = 2340985798034038923L;
+
+    /**
+     * Tag written in front of the compact serial form.  It is negative so
+     * that it can never be mistaken for the size header that started the
+     * original one-object-per-element form.
+     */
+    private static final int COMPACT_FORMAT = -1;
+
+    /**
+     * Size in bytes of the buffer elements are staged in while they are
+     * written or read in bulk.
+     */
+    private static final int SERIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * Saves this deque to a stream (that is, serializes it).
+     *
+     * @serialData The {@code int} tag {@code -1}, then the current size
+     * ({@code int}) of the deque, followed by all of its elements as raw
+     * big-endian {@code $primitive$}s in first-to-last order.  Streams
+     * which start with a non-negative size instead of the tag hold each
+     * element as an object reference, and can still be read.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws java.io.IOException {
+        s.defaultWriteObject();
+        writeTo(s);
+    }
+
+    /**
+     * Reconstitutes this deque from a stream (that is, deserializes it).
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        int format = s.readInt();
+        if (format >= 0) { // legacy form, the tag is the size
+            allocateElements(format);
+            head = 0;
+            tail = format;
+
+            for (int i = 0; i < format; i++)
+                elements[i] = ($primitiveWrp$) s.readObject();
+        } else {
+            readCompact(s, format);
+        }
+    }
+
+    /**
+     * Writes the elements of this deque to the specified output in the
+     * compact serial form: a format tag, the size, and then the elements as
+     * raw {@code $primitive$}s, staged through a byte buffer so they are
+     * written in bulk.
+     *
+     * <p>This is the same encoding {@code writeObject} uses, without any
+     * of the serialization machinery around it; an {@link
+     * java.io.Externalizable} holder can call it from {@code writeExternal}.
+     *
+     * @param out the output to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int size = size();
+        out.writeInt(COMPACT_FORMAT);
+        out.writeInt(size);
+
+        byte[] buf = new byte[Math.min(size, SERIAL_BUFFER_SIZE / $primitiveWrp$.BYTES) * $primitiveWrp$.BYTES];
+        $primitiveFmt$Buffer view = ByteBuffer.wrap(buf).$primitiveView$();
+        int h = head;
+        int t = tail;
+        if (h <= t) {
+            writeRange(out, buf, view, h, t);
+        } else {
+            writeRange(out, buf, view, h, elements.length);
+            writeRange(out, buf, view, 0, t);
+        }
+    }
+
+    private void writeRange(DataOutput out, byte[] buf, $primitiveFmt$Buffer view,
+            int from, int to) throws IOException {
+        while (from < to) {
+            int n = Math.min(to - from, view.capacity());
+            ((Buffer) view).clear(); // not the covariant override Java 8 lacks
+            view.put(elements, from, n);
+            out.write(buf, 0, n * $primitiveWrp$.BYTES);
+            from += n;
+        }
+    }
+
+    /**
+     * Replaces the contents of this deque with elements read from the
+     * specified input, which must hold data written by {@link
+     * #writeTo(DataOutput)}.
+     *
+     * @param in the input to read from
+     * @throws IOException if an I/O error occurs, or the input does not
+     *         hold a deque in the compact serial form
+     */
+    public void readFrom(DataInput in) throws IOException {
+        readCompact(in, in.readInt());
+    }
+
+    private void readCompact(DataInput in, int format) throws IOException {
+        if (format != COMPACT_FORMAT)
+            throw new StreamCorruptedException("Unknown deque format " + format);
+        int size = in.readInt();
+        if (size < 0 || calculateSize(size) <= size)
+            throw new StreamCorruptedException("Illegal deque size " + size);
+
+        allocateElements(size);
+        head = 0;
+        tail = size;
+
+        byte[] buf = new byte[Math.min(size, SERIAL_BUFFER_SIZE / $primitiveWrp$.BYTES) * $primitiveWrp$.BYTES];
+        $primitiveFmt$Buffer view = ByteBuffer.wrap(buf).$primitiveView$();
+        for (int i = 0; i < size; ) {
+            int n = Math.min(size - i, view.capacity());
+            in.readFully(buf, 0, n * $primitiveWrp$.BYTES);
+            ((Buffer) view).clear(); // not the covariant override Java 8 lacks
+            view.get(elements, i, n);
+            i += n;
+        }
+        recordSize();
+    }
+
+//#if byte
+    /**
+     * Reads bytes from the specified channel straight into the free part of
+     * the ring and appends them to this deque.  The free part is at most two
+     * segments of the backing array, wrapped as {@link ByteBuffer}s and
+     * filled with a single scattering read if the channel supports one.
+     * Otherwise the second segment is read into only if the first one was
+     * filled, as a scattering read would.  Either way this method makes at
+     * most one read per segment, so on a blocking channel it returns once
+     * some bytes are available rather than waiting for the ring to fill.
+     *
+     * <p>At most as many bytes are read as fit without growing, which is
+     * never none: a deque with no free slot is grown first.  Call {@link
+     * #ensureCapacity} beforehand to read more at once.
+     *
+     * @param ch the channel to read from
+     * @return the number of bytes read, possibly zero, or {@code -1} if the
+     *         channel has reached end-of-stream
+     * @throws IOException if an I/O error occurs
+     */
+    public int read(ReadableByteChannel ch) throws IOException {
+        if (size() == elements.length - 1)
+            ensureCapacity(elements.length);
+        byte[] a = elements;
+        int h = head, t = tail, n = a.length;
+        int last = (h - 1) & (n - 1); // the slot that must stay free
+        int read;
+        if (t <= last) {
+            read = ch.read(ByteBuffer.wrap(a, t, last - t));
+        } else { // the free part wraps: [t, n) and [0, last)
+            ByteBuffer[] bufs = { ByteBuffer.wrap(a, t, n - t), ByteBuffer.wrap(a, 0, last) };
+            if (ch instanceof ScatteringByteChannel) {
+                long r = ((ScatteringByteChannel) ch).read(bufs);
+                read = (int) r;
+            } else {
+                read = ch.read(bufs[0]);
+                if (read == n - t && last > 0) {
+                    int r = ch.read(bufs[1]);
+                    if (r > 0)
+                        read += r;
+                }
+            }
+        }
+        if (read > 0) {
+            tail = (t + read) & (n - 1);
+            recordSize();
+        }
+        return read;
+    }
+
+    /**
+     * Writes bytes from the head of this deque straight from the backing
+     * array to the specified channel, and removes the ones written.  The
+     * elements are at most two segments of the array, wrapped as {@link
+     * ByteBuffer}s and written with a single gathering write if the channel
+     * supports one.
+     *
+     * @param ch the channel to write to
+     * @return the number of bytes written, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    public int write(WritableByteChannel ch) throws IOException {
+        byte[] a = elements;
+        int h = head, t = tail, n = a.length;
+        int written;
+        if (h <= t) {
+            written = writeFully(ch, ByteBuffer.wrap(a, h, t - h));
+        } else { // the elements wrap: [h, n) and [0, t)
+            ByteBuffer[] bufs = { ByteBuffer.wrap(a, h, n - h), ByteBuffer.wrap(a, 0, t) };
+            if (ch instanceof GatheringByteChannel) {
+                written = (int) ((GatheringByteChannel) ch).write(bufs);
+            } else {
+                written = writeFully(ch, bufs[0]);
+                if (written == n - h)
+                    written += writeFully(ch, bufs[1]);
+            }
+        }
+        if (written > 0)
+            discardFirst(written);
+        return written;
+    }
+
+    /**
+     * Writes from the buffer until it is empty, or the channel takes no
+     * more right away.
+     */
+    private static int writeFully(WritableByteChannel ch, ByteBuffer buf) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            int w = ch.write(buf);
+            if (w <= 0)
+                break;
+            total += w;
+        }
+        return total;
+    }
+
+//#endif
+//#if char
+    // *** CharSequence and Appendable methods ***
+
+    /**
+     * Returns the number of chars in this deque.  This method is equivalent
+     * to {@link #size}.
+     *
+     * @return the number of chars in this deque
+     */
+    public int length() {
+        return size();
+    }
+
+    /**
+     * Returns the char at the specified position in this deque, counting
+     * from the head.  This method is equivalent to {@link #get}.
+     *
+     * @param index index of the char to return
+     * @return the char at the specified position in this deque
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= length()})
+     */
+    public char charAt(int index) {
+        return get(index);
+    }
+
+    /**
+     * Returns a view of the specified range of this deque, counting from the
+     * head.  The view reads through to the backing array, so it costs
+     * nothing to create; it is only valid until the deque is next modified.
+     *
+     * @param start the index of the first char, inclusive
+     * @param end the index of the last char, exclusive
+     * @return the specified range of this deque
+     * @throws IndexOutOfBoundsException if {@code start} or {@code end} is
+     *         negative, {@code end} is greater than {@code length()}, or
+     *         {@code start} is greater than {@code end}
+     */
+    public CharSequence subSequence(int start, int end) {
+        checkRange(start, end, size());
+        return new SubSequence(head + start, end - start);
+    }
+
+    private static void checkRange(int start, int end, int length) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+    }
+
+    /**
+     * Returns the chars of this deque, from head to tail, as a string.
+     *
+     * @return the chars of this deque as a string
+     */
+    @Override
+    public String toString() {
+        return segmentString(head, size());
+    }
+
+    /**
+     * Copies {@code len} chars of the ring, starting at index {@code from},
+     * into a string with at most two bulk appends.
+     */
+    private String segmentString(int from, int len) {
+        char[] a = elements;
+        from &= a.length - 1;
+        int r = Math.min(len, a.length - from);
+        return new StringBuilder(len)
+                .append(a, from, r)
+                .append(a, 0, len - r)
+                .toString();
+    }
+
+    /**
+     * A range of the deque, read through to its backing array.
+     */
+    private final class SubSequence implements CharSequence {
+        private final int from; // ring index of the first char, not masked
+        private final int length;
+
+        SubSequence(int from, int length) {
+            this.from = from;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+            return elements[(from + index) & (elements.length - 1)];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            checkRange(start, end, length);
+            return new SubSequence(from + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return segmentString(from, length);
+        }
+    }
+
+    /**
+     * Appends the specified char to this deque.  This method is equivalent
+     * to {@link #addLast}.
+     *
+     * @param c the char to append
+     * @return this deque
+     */
+    public CharDeque append(char c) {
+        addLast(c);
+        return this;
+    }
+
+    /**
+     * Appends the specified character sequence to this deque.  Strings,
+     * string builders and char deques are copied in bulk.
+     *
+     * @param csq the character sequence to append; if {@code null}, the
+     *        four characters {@code "null"} are appended
+     * @return this deque
+     */
+    public CharDeque append(CharSequence csq) {
+        if (csq == null)
+            csq = "null";
+        return append(csq, 0, csq.length());
+    }
+
+    /**
+     * Appends a subsequence of the specified character sequence to this
+     * deque.  Strings, string builders and char deques are copied in bulk.
+     *
+     * @param csq the character sequence to append from; if {@code null},
+     *        chars are appended as if it held the four characters
+     *        {@code "null"}
+     * @param start the index of the first char to append
+     * @param end the index after the last char to append
+     * @return this deque
+     * @throws IndexOutOfBoundsException if {@code start} or {@code end} is
+     *         negative, {@code start} is greater than {@code end}, or
+     *         {@code end} is greater than {@code csq.length()}
+     */
+    public CharDeque append(CharSequence csq, int start, int end) {
+        if (csq == null)
+            csq = "null";
+        checkRange(start, end, csq.length());
+        int len = end - start;
+        if (len == 0)
+            return this;
+        if (csq instanceof CharDeque) {
+            // reserve first, as it may move the source if it is this deque;
+            // the copy then only writes to free slots, so it needs no snapshot
+            reserve(len);
+            int t = tail;
+            copyIn((CharDeque) csq, start, len, t);
+            tail = (t + len) & (elements.length - 1);
+            recordSize();
+            return this;
+        }
+        if (!(csq instanceof String) && !(csq instanceof StringBuilder)
+                && !(csq instanceof StringBuffer)) {
+            for (int i = start; i < end; i++)
+                addLast(csq.charAt(i));
+            return this;
+        }
+        reserve(len);
+        char[] a = elements;
+        int t = tail;
+        int r = Math.min(len, a.length - t); // slots to the right of tail
+        getChars(csq, start, start + r, a, t);
+        getChars(csq, start + r, end, a, 0);
+        tail = (t + len) & (a.length - 1);
+        recordSize();
+        return this;
+    }
+
+    private static void getChars(CharSequence csq, int start, int end, char[] dst, int dstPos) {
+        if (csq instanceof String)
+            ((String) csq).getChars(start, end, dst, dstPos);
+        else if (csq instanceof StringBuilder)
+            ((StringBuilder) csq).getChars(start, end, dst, dstPos);
+        else
+            ((StringBuffer) csq).getChars(start, end, dst, dstPos);
+    }
+
+    /**
+     * Returns a reader that takes chars from the head of this deque, in
+     * bulk where it can.  The reader reports end-of-stream whenever the
+     * deque is empty, and closing it has no effect.
+     *
+     * @return a reader over this deque
+     */
+    public Reader reader() {
+        return new Reader() {
+            @Override
+            public int read() {
+                return isEmpty() ? -1 : pollFirst();
+            }
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                if (len == 0)
+                    return 0;
+                int n = pollFirst(cbuf, off, len);
+                return n == 0 ? -1 : n;
+            }
+
+            @Override
+            public long skip(long n) {
+                if (n < 0)
+                    throw new IllegalArgumentException("skip value is negative");
+                int k = (int) Math.min(n, size());
+                discardFirst(k);
+                return k;
+            }
+
+            @Override
+            public boolean ready() {
+                return !isEmpty();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Returns a writer that appends chars to the tail of this deque, in bulk
+     * where it can.  Flushing and closing it have no effect.
+     *
+     * @return a writer into this deque
+     */
+    public Writer writer() {
+        return new Writer() {
+            @Override
+            public void write(int c) {
+                addLast((char) c);
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                addAllLast(cbuf, off, len);
+            }
+
+            @Override
+            public void write(String str, int off, int len) {
+                append(str, off, off + len);
+            }
+
+            @Override
+            public Writer append(CharSequence csq) {
+                CharDeque.this.append(csq);
+                return this;
+            }
+
+            @Override
+            public Writer append(CharSequence csq, int start, int end) {
+                CharDeque.this.append(csq, start, end);
+                return this;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Decodes bytes from the specified buffer with the specified decoder,
+     * writing the chars straight into the free part of the ring and appending
+     * them to this deque, which grows as needed.
+     *
+     * <p>The free part is wrapped as {@link CharBuffer}s, at most two, so the
+     * decoder never writes to an intermediate buffer, except for the one or
+     * two chars of a unit that straddles the end of the backing array.
+     * Decoding stops when the input is used up, as with {@link
+     * CharsetDecoder#decode(ByteBuffer, CharBuffer, boolean)}, or at the
+     * first malformed or unmappable input the decoder reports.  If {@code
+     * endOfInput} is {@code true} and all input was decoded, the decoder is
+     * flushed into the deque too, and must be reset before it is reused.
+     *
+     * @param decoder the decoder to use
+     * @param in the bytes to decode; its position is advanced past the bytes
+     *        decoded
+     * @param endOfInput {@code true} if no more input follows {@code in}
+     * @return {@link CoderResult#UNDERFLOW} if all input was decoded, or the
+     *         error result the decoder reported
+     * @throws IllegalStateException if the decoder is not in a state to
+     *         decode, or if the deque cannot grow any further
+     */
+    public CoderResult decode(CharsetDecoder decoder, ByteBuffer in, boolean endOfInput) {
+        CoderResult cr;
+        int need = 2; // a unit decodes to at most a surrogate pair
+        for (;;) {
+            int expected = (int) Math.min(in.remaining() * (double) decoder.averageCharsPerByte(),
+                    Integer.MAX_VALUE >>> 1);
+            if (elements.length - 1 - size() < Math.max(expected, need))
+                reserve(Math.max(expected, need));
+            char[] a = elements;
+            int h = head, t = tail, n = a.length;
+            int last = (h - 1) & (n - 1); // the slot that must stay free
+            boolean wraps = t > last;
+            CharBuffer out = CharBuffer.wrap(a, t, (wraps ? n : last) - t);
+            cr = decoder.decode(in, out, endOfInput);
+            int wrote = out.position() - t;
+            tail = (t + wrote) & (n - 1);
+            recordSize();
+            if (!cr.isOverflow())
+                break;
+            if (wraps && wrote < n - t) {
+                // the next unit straddles the end of the array; decode it
+                // aside and add its chars one by one
+                CharBuffer unit = CharBuffer.allocate(2);
+                cr = decoder.decode(in, unit, endOfInput);
+                ((Buffer) unit).flip();
+                while (unit.hasRemaining())
+                    addLast(unit.get());
+                if (!cr.isOverflow())
+                    break;
+            } else if (wrote == 0) {
+                need <<= 1; // the decoder wants more room than it had
+            }
+        }
+        if (endOfInput && cr.isUnderflow()) {
+            CharBuffer rest = CharBuffer.allocate(16);
+            do {
+                cr = decoder.flush(rest);
+                addAllLast(rest.array(), 0, rest.position());
+                ((Buffer) rest).clear();
+            } while (cr.isOverflow());
+        }
+        return cr;
+    }
+
+//#endif
+    /**
+     * Creates a <em><a href="Spliterator.html#binding">late-binding</a></em>
+     * and <em>fail-fast</em> {@link Spliterator} over the elements in this
+     * deque.
      *
      * <p>The {@code Spliterator} reports {@link Spliterator#SIZED},
      * {@link Spliterator#SUBSIZED}, {@link Spliterator#ORDERED}, and
@@ -861,6 +2389,30 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         return new DeqSpliterator(this, -1, -1);
     }
 
+    /**
+     * Returns a sequential {@code $primitiveWideFmt$Stream} with this deque as its
+     * source.  The stream is backed by {@link #spliterator()}, so no copy of
+     * the elements is made.
+     *
+     * @return a sequential {@code $primitiveWideFmt$Stream} over the elements in
+     *         this deque
+     */
+    public $primitiveWideFmt$Stream stream() {
+        return StreamSupport.$primitiveWide$Stream(new StreamSpliterator(new DeqSpliterator(this, -1, -1)), false);
+    }
+
+    /**
+     * Returns a possibly parallel {@code $primitiveWideFmt$Stream} with this deque
+     * as its source.  The stream is split at the midpoint of the ring, in the
+     * same way as {@link #spliterator()}.
+     *
+     * @return a possibly parallel {@code $primitiveWideFmt$Stream} over the
+     *         elements in this deque
+     */
+    public $primitiveWideFmt$Stream parallelStream() {
+        return StreamSupport.$primitiveWide$Stream(new StreamSpliterator(new DeqSpliterator(this, -1, -1)), true);
+    }
+
     static final class DeqSpliterator implements $primitiveFmt$Spliterator {
         private final $primitiveFmt$Deque deq;
         private int fence;  // -1 until first use
@@ -925,6 +2477,40 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
             return false;
         }
 
+        public void forEachRemaining($primitiveWideFmt$Consumer consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            $primitive$[] a = deq.elements;
+            int f = getFence(), i = index;
+            index = f;
+            if (i > f) { // wrapped; walk [i, a.length) before [0, f)
+                for (int n = a.length; i < n; i++)
+                    consumer.accept(a[i]);
+                i = 0;
+            }
+            for (; i < f; i++)
+                consumer.accept(a[i]);
+        }
+
+        public boolean tryAdvance($primitiveWideFmt$Consumer consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            $primitive$[] a = deq.elements;
+            int m = a.length - 1;
+            
+            getFence();
+            
+            int i = index;
+            
+            if (i != fence) {
+                 $primitive$ e = a[i];
+                index = (i + 1) & m;
+                consumer.accept(e);
+                return true;
+            }
+            return false;
+        }
+
         public long estimateSize() {
             int n = getFence() - index;
             if (n < 0)
@@ -939,5 +2525,38 @@ public class $primitiveFmt$Deque implements Cloneable, Serializable
         }
     }
 
+    /**
+     * Adapts a {@link DeqSpliterator} to the {@link Spliterator.Of$primitiveWideFmt$}
+     * expected by {@code java.util.stream}.
+     */
+    static final class StreamSpliterator implements Spliterator.Of$primitiveWideFmt$ {
+        private final DeqSpliterator spliterator;
+
+        StreamSpliterator(DeqSpliterator spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        public StreamSpliterator trySplit() {
+            DeqSpliterator prefix = spliterator.trySplit();
+            return prefix == null ? null : new StreamSpliterator(prefix);
+        }
+
+        public boolean tryAdvance($primitiveWideFmt$Consumer consumer) {
+            return spliterator.tryAdvance(consumer);
+        }
+
+        public void forEachRemaining($primitiveWideFmt$Consumer consumer) {
+            spliterator.forEachRemaining(consumer);
+        }
+
+        public long estimateSize() {
+            return spliterator.estimateSize();
+        }
+
+        public int characteristics() {
+            return spliterator.characteristics();
+        }
+    }
+
 }
 
@@ -2,6 +2,7 @@ package fallk.neatarrays;
 
 import java.util.Comparator;
 import java.util.function.Consumer;
+import java.util.function.$primitiveWideFmt$Consumer;
 
 /**
  * An object for traversing and partitioning elements of a source.  The source
@@ -267,6 +268,7 @@ import java.util.function.Consumer;
  * @see Collection
  * @since 1.8
  */
+@SuppressWarnings("overloads")
 public interface $primitiveFmt$Spliterator {
     /**
      * If a remaining element exists, performs the given action on it,
@@ -300,6 +302,47 @@ public interface $primitiveFmt$Spliterator {
         do { } while (tryAdvance(action));
     }
 
+    /**
+     * If a remaining element exists, performs the given action on it,
+     * returning {@code true}; else returns {@code false}.  If this
+     * Spliterator is {@link #ORDERED} the action is performed on the
+     * next element in encounter order.  Exceptions thrown by the
+     * action are relayed to the caller.
+     *
+     * <p>Unlike {@link #tryAdvance(Consumer)}, the element is handed to the
+     * action as a {@code $primitiveWide$} and is never boxed.
+     *
+     * @param action The action
+     * @return {@code false} if no remaining elements existed
+     * upon entry to this method, else {@code true}.
+     * @throws NullPointerException if the specified action is null
+     */
+    boolean tryAdvance($primitiveWideFmt$Consumer action);
+
+    /**
+     * Performs the given action for each remaining element, sequentially in
+     * the current thread, until all elements have been processed or the action
+     * throws an exception.  If this Spliterator is {@link #ORDERED}, actions
+     * are performed in encounter order.  Exceptions thrown by the action
+     * are relayed to the caller.
+     *
+     * <p>Unlike {@link #forEachRemaining(Consumer)}, elements are handed to
+     * the action as {@code $primitiveWide$} values and are never boxed.  An
+     * implicitly typed lambda fits both overloads, so it must be given a
+     * type, as in {@code forEachRemaining(($primitiveWideFmt$Consumer) e -> ...)}.
+     *
+     * @implSpec
+     * The default implementation repeatedly invokes
+     * {@link #tryAdvance($primitiveWideFmt$Consumer)} until it returns
+     * {@code false}.  It should be overridden whenever possible.
+     *
+     * @param action The action
+     * @throws NullPointerException if the specified action is null
+     */
+    default void forEachRemaining($primitiveWideFmt$Consumer action) {
+        do { } while (tryAdvance(action));
+    }
+
     /**
      * If this spliterator can be partitioned, returns a Spliterator
      * covering elements, that will, upon return from this method, not
@@ -0,0 +1,244 @@
+package fallk.neatarrays;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.$primitiveWideFmt$Consumer;
+
+/**
+ * An unbounded, thread-safe queue of {@code $primitive$}s for many
+ * producers, split into stripes so that producers rarely meet.
+ *
+ * <p>Each stripe is a {@link $primitiveFmt$Deque} with a lock of its own.
+ * A producer adds to the stripe its thread hashes to, and moves to another
+ * stripe whenever it finds its own locked, so producers spread themselves
+ * out under contention.  Consumers visit the stripes in rotation, and the
+ * {@link #drain drain} methods take a batch out of each stripe under a
+ * single lock acquisition.
+ *
+ * <p>The order is FIFO within a stripe, and so for the elements of any one
+ * producer that was not moved in between, but not across stripes.
+ *
+ * <p>{@link #poll} returns {@code NULL_VALUE} when it finds the queue
+ * empty, and the stripes use it to mark their free slots, so {@code
+ * NULL_VALUE} must not be offered.
+ */
+public class $primitiveFmt$StripedQueue
+{
+    // the primitive value that represents 'null'
+    protected static final $primitive$ NULL_VALUE = $primitiveWrp$.MIN_VALUE;
+
+    /**
+     * The number of locked stripes a producer moves on from before it
+     * waits for a lock.
+     */
+    private static final int MAX_PROBES = 4;
+
+    /**
+     * The largest number of elements {@link #drain($primitiveWideFmt$Consumer, int)}
+     * takes from a stripe at a time.
+     */
+    private static final int DRAIN_BATCH = 256;
+
+    private static final class Stripe extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        final $primitiveFmt$Deque deque = new $primitiveFmt$Deque();
+    }
+
+    private final Stripe[] stripes;
+
+    private final int mask;
+
+    /**
+     * The stripe the next consumer starts at.  Updated without
+     * synchronization; a lost update only changes where a consumer starts.
+     */
+    private int next;
+
+    /**
+     * Constructs an empty queue with as many stripes as there are
+     * processors available to the JVM, rounded up to a power of two.
+     */
+    public $primitiveFmt$StripedQueue() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an empty queue with at least the specified number of
+     * stripes.  The number is rounded up to a power of two.
+     *
+     * @param stripes the least number of stripes
+     * @throws IllegalArgumentException if the number of stripes is less
+     *         than one or more than 2<sup>16</sup>
+     */
+    public $primitiveFmt$StripedQueue(int stripes) {
+        if (stripes < 1 || stripes > 1 << 16)
+            throw new IllegalArgumentException("Illegal stripe count: " + stripes);
+        int n = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++)
+            this.stripes[i] = new Stripe();
+        mask = n - 1;
+    }
+
+    /**
+     * Returns the number of stripes of this queue.
+     *
+     * @return the number of stripes of this queue
+     */
+    public int stripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Inserts the specified element into this queue.
+     *
+     * @param e the element to add; must not be {@code NULL_VALUE}
+     * @return {@code true}
+     */
+    public boolean offer($primitive$ e) {
+        int h = ThreadProbe.get();
+        Stripe s;
+        for (int i = 0; ; i++, h = ThreadProbe.advance()) {
+            s = stripes[h & mask];
+            if (s.tryLock())
+                break;
+            if (i == MAX_PROBES) {
+                s.lock();
+                break;
+            }
+        }
+        try {
+            s.deque.addLast(e);
+        } finally {
+            s.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves and removes an element from this queue, from the next
+     * non-empty stripe in rotation, or returns {@code NULL_VALUE} if this
+     * queue is empty.
+     *
+     * @return an element of this queue, or {@code NULL_VALUE} if this queue
+     *         is empty
+     */
+    public $primitive$ poll() {
+        int start = next;
+        for (int i = 0; i <= mask; i++) {
+            int k = (start + i) & mask;
+            Stripe s = stripes[k];
+            s.lock();
+            try {
+                if (!s.deque.isEmpty()) {
+                    next = k + 1;
+                    return s.deque.pollFirst();
+                }
+            } finally {
+                s.unlock();
+            }
+        }
+        return NULL_VALUE;
+    }
+
+    /**
+     * Removes up to {@code max} elements from this queue into the specified
+     * array, taking as many as possible from each stripe in rotation.
+     *
+     * @param dst the array to store the elements into
+     * @param off the index in {@code dst} of the first element
+     * @param max the largest number of elements to remove
+     * @return the number of elements removed
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public int drain($primitive$[] dst, int off, int max) {
+        if (off < 0 || max < 0 || max > dst.length - off)
+            throw new IndexOutOfBoundsException();
+        int start = next;
+        int n = 0;
+        for (int i = 0; i <= mask && n < max; i++) {
+            Stripe s = stripes[(start + i) & mask];
+            s.lock();
+            try {
+                n += s.deque.pollFirst(dst, off + n, max - n);
+            } finally {
+                s.unlock();
+            }
+        }
+        next = start + 1;
+        return n;
+    }
+
+    /**
+     * Removes up to {@code limit} elements from this queue and passes them
+     * to the specified action, taking them from each stripe in rotation in
+     * batches.  The action is called without any lock held.
+     *
+     * @param action the action to perform on each element
+     * @param limit the largest number of elements to remove
+     * @return the number of elements removed
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public int drain($primitiveWideFmt$Consumer action, int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Negative limit: " + limit);
+        $primitive$[] batch = new $primitive$[Math.min(limit, DRAIN_BATCH)];
+        int start = next;
+        int n = 0;
+        for (int i = 0; i <= mask && n < limit; ) {
+            Stripe s = stripes[(start + i) & mask];
+            int k;
+            s.lock();
+            try {
+                k = s.deque.pollFirst(batch, 0, Math.min(batch.length, limit - n));
+            } finally {
+                s.unlock();
+            }
+            for (int j = 0; j < k; j++)
+                action.accept(batch[j]);
+            n += k;
+            if (k < batch.length) // the stripe ran dry
+                i++;
+        }
+        next = start + 1;
+        return n;
+    }
+
+    /**
+     * Returns the number of elements in this queue.  Elements may be added
+     * or removed concurrently, so the result is only a snapshot.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            s.lock();
+            try {
+                n += s.deque.size();
+            } finally {
+                s.unlock();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns {@code true} if this queue contains no elements.  Elements may
+     * be added or removed concurrently, so the result is only a snapshot.
+     *
+     * @return {@code true} if this queue contains no elements
+     */
+    public boolean isEmpty() {
+        for (Stripe s : stripes) {
+            s.lock();
+            try {
+                if (!s.deque.isEmpty())
+                    return false;
+            } finally {
+                s.unlock();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,681 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+/*
+ * This file is available under and governed by the GNU General Public
+ * License version 2 only, as published by the Free Software Foundation.
+ * However, the following notice accompanied the original version of this
+ * file:
+ *
+ * Written by Josh Bloch of Google Inc. and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/.
+ */
+
+package fallk.neatarrays;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * A deque of {@code boolean}s that packs 64 of them into each {@code long},
+ * taking a sixteenth of the memory of a {@link ShortDeque} holding the same
+ * flags.
+ *
+ * <p>This class works like the generated deques: the elements form a ring
+ * whose capacity, counted in bits, is a power of two of at least 64, with
+ * head and tail bit indices masked into it, and which doubles when it
+ * fills up.  All bits not holding deque elements are kept clear, which
+ * lets {@link #cardinality()} count whole words.  Like the other deques,
+ * it is not thread-safe.
+ *
+ * <p>The iterators returned by this class's {@code iterator} method are
+ * <i>fail-fast</i> on a best-effort basis, as those of {@link
+ * java.util.ArrayDeque} are.
+ *
+ * @author  Josh Bloch and Doug Lea
+ */
+public class BooleanDeque implements Cloneable, Serializable
+{
+    // the primitive value that represents 'null'
+    protected static final boolean NULL_VALUE = false;
+
+    /**
+     * The words holding the elements; bit {@code i} of the ring is bit
+     * {@code i & 63} of word {@code i >>> 6}.  There are always a power of
+     * two of them, and the ring is never allowed to become full, except
+     * transiently within an addX method where it is resized (see
+     * doubleCapacity) immediately upon becoming full.
+     */
+    transient long[] words; // non-private to simplify nested class access
+
+    /**
+     * The bit index of the element at the head of the deque; or an
+     * arbitrary number equal to tail if the deque is empty.
+     */
+    transient int head;
+
+    /**
+     * The bit index at which the next element would be added to the tail
+     * of the deque.
+     */
+    transient int tail;
+
+    /**
+     * The minimum capacity that we'll use for a newly created deque, in
+     * bits.  Must be a power of 2 and a multiple of 64.
+     */
+    private static final int MIN_INITIAL_CAPACITY = 64;
+
+    /**
+     * The largest capacity a deque can have, in bits.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    // ******  Array allocation and resizing utilities ******
+
+    /**
+     * Returns the smallest power of two large enough to hold the given
+     * number of elements without the ring becoming full.
+     */
+    private static int calculateSize(int numElements) {
+        int initialCapacity = MIN_INITIAL_CAPACITY;
+        if (numElements >= initialCapacity) {
+            initialCapacity = Integer.highestOneBit(numElements) << 1;
+            if (initialCapacity < 0 || initialCapacity > MAX_CAPACITY)
+                initialCapacity = MAX_CAPACITY;
+        }
+        return initialCapacity;
+    }
+
+    /**
+     * Returns the 64 bits of the ring starting at bit index {@code i},
+     * wrapping around the end of the ring if needed.
+     */
+    private long wordAt(int i) {
+        long[] w = words;
+        int j = i >>> 6;
+        int off = i & 63;
+        long result = w[j] >>> off;
+        if (off != 0)
+            result |= w[(j + 1) & (w.length - 1)] << (64 - off);
+        return result;
+    }
+
+    /**
+     * Doubles the capacity of this deque.  Call only when full, i.e.,
+     * when head and tail have wrapped around to become equal.  The ring is
+     * rotated a word at a time so that head lands on bit 0.
+     */
+    private void doubleCapacity() {
+        assert head == tail;
+        int n = words.length;
+        if (n << 6 >= MAX_CAPACITY)
+            throw new IllegalStateException("Sorry, deque too big");
+        long[] a = new long[n << 1];
+        int p = head;
+        int mask = (n << 6) - 1;
+        for (int k = 0; k < n; k++)
+            a[k] = wordAt((p + (k << 6)) & mask);
+        words = a;
+        head = 0;
+        tail = n << 6;
+    }
+
+    private boolean bit(int i) {
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private void setBit(int i) {
+        words[i >>> 6] |= 1L << i;
+    }
+
+    private void clearBit(int i) {
+        words[i >>> 6] &= ~(1L << i);
+    }
+
+    /**
+     * Constructs an empty deque with an initial capacity sufficient to
+     * hold 64 elements.
+     */
+    public BooleanDeque() {
+        words = new long[MIN_INITIAL_CAPACITY >>> 6];
+    }
+
+    /**
+     * Constructs an empty deque with an initial capacity sufficient to
+     * hold the specified number of elements.
+     *
+     * @param numElements  lower bound on initial capacity of the deque
+     */
+    public BooleanDeque(int numElements) {
+        words = new long[calculateSize(numElements) >>> 6];
+    }
+
+    // The main insertion and extraction methods are addFirst,
+    // addLast, pollFirst, pollLast. The other methods are defined in
+    // terms of these.
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     */
+    public void addFirst(boolean e) {
+        head = (head - 1) & ((words.length << 6) - 1);
+        if (e)
+            setBit(head);
+        if (head == tail)
+            doubleCapacity();
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * <p>This method is equivalent to {@link #add}.
+     *
+     * @param e the element to add
+     */
+    public void addLast(boolean e) {
+        if (e)
+            setBit(tail);
+        if ( (tail = (tail + 1) & ((words.length << 6) - 1)) == head)
+            doubleCapacity();
+    }
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offerFirst(boolean e) {
+        addFirst(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offerLast(boolean e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public boolean removeFirst() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollFirst();
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public boolean removeLast() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollLast();
+    }
+
+    public boolean pollFirst() {
+        int h = head;
+        if (h == tail) // isEmpty()
+            return NULL_VALUE;
+        boolean result = bit(h);
+        clearBit(h); // Must null out slot
+        head = (h + 1) & ((words.length << 6) - 1);
+        return result;
+    }
+
+    public boolean pollLast() {
+        if (head == tail) // isEmpty()
+            return NULL_VALUE;
+        int t = (tail - 1) & ((words.length << 6) - 1);
+        boolean result = bit(t);
+        clearBit(t);
+        tail = t;
+        return result;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public boolean getFirst() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return bit(head);
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public boolean getLast() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return bit((tail - 1) & ((words.length << 6) - 1));
+    }
+
+    public boolean peekFirst() {
+        return head != tail && bit(head);
+    }
+
+    public boolean peekLast() {
+        return head != tail && bit((tail - 1) & ((words.length << 6) - 1));
+    }
+
+    // *** Queue methods ***
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean add(boolean e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offer(boolean e) {
+        return offerLast(e);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public boolean remove() {
+        return removeFirst();
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque,
+     * or returns {@code false} if this deque is empty.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code false} if this deque is empty
+     */
+    public boolean poll() {
+        return pollFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public boolean element() {
+        return getFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque, or returns {@code false} if this deque is empty.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code false} if this deque is empty
+     */
+    public boolean peek() {
+        return peekFirst();
+    }
+
+    // *** Stack methods ***
+
+    /**
+     * Pushes an element onto the stack represented by this deque.
+     *
+     * @param e the element to push
+     */
+    public void push(boolean e) {
+        addFirst(e);
+    }
+
+    /**
+     * Pops an element from the stack represented by this deque.
+     *
+     * @return the element at the front of this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public boolean pop() {
+        return removeFirst();
+    }
+
+    // *** Collection Methods ***
+
+    /**
+     * Returns the element at the specified position in this deque, counting
+     * from the head.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this deque
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public boolean get(int index) {
+        checkIndex(index);
+        return bit((head + index) & ((words.length << 6) - 1));
+    }
+
+    /**
+     * Replaces the element at the specified position in this deque, counting
+     * from the head, with the specified element.
+     *
+     * @param index index of the element to replace
+     * @param e element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public boolean set(int index, boolean e) {
+        checkIndex(index);
+        int i = (head + index) & ((words.length << 6) - 1);
+        boolean result = bit(i);
+        if (e)
+            setBit(i);
+        else
+            clearBit(i);
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        int size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque
+     */
+    public int size() {
+        return (tail - head) & ((words.length << 6) - 1);
+    }
+
+    /**
+     * Returns the number of elements this deque can contain without increasing in size.
+     *
+     * @return the number of elements this deque can contain without increasing in size.
+     */
+    public int space() {
+        return words.length << 6;
+    }
+
+    /**
+     * Returns {@code true} if this deque contains no elements.
+     *
+     * @return {@code true} if this deque contains no elements
+     */
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * Returns the number of {@code true} elements in this deque.
+     *
+     * @return the number of {@code true} elements in this deque
+     */
+    public int cardinality() {
+        int n = 0;
+        for (long w : words) // free bits are clear
+            n += Long.bitCount(w);
+        return n;
+    }
+
+    /**
+     * Returns {@code true} if this deque contains the specified element.
+     *
+     * @param o element to be checked for containment in this deque
+     * @return {@code true} if this deque contains the specified element
+     */
+    public boolean contains(boolean o) {
+        int ones = cardinality();
+        return o ? ones > 0 : ones < size();
+    }
+
+    /**
+     * Removes all of the elements from this deque.
+     * The deque will be empty after this call returns.
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+        head = tail = 0;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this deque
+     * in proper sequence (from first to last element).
+     *
+     * @return an array containing all of the elements in this deque
+     */
+    public boolean[] toArray() {
+        boolean[] a = new boolean[size()];
+        int mask = (words.length << 6) - 1;
+        for (int i = 0, j = head; i < a.length; i++, j = (j + 1) & mask)
+            a[i] = bit(j);
+        return a;
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque.  The elements
+     * will be ordered from first (head) to last (tail).
+     *
+     * @return an iterator over the elements in this deque
+     */
+    public BooleanIterator iterator() {
+        return new DeqIterator();
+    }
+
+    private class DeqIterator implements BooleanIterator {
+        /**
+         * Index of element to be returned by subsequent call to next.
+         */
+        private int cursor = head;
+
+        /**
+         * Tail recorded at construction, to stop iterator and also to
+         * check for comodification.
+         */
+        private final int fence = tail;
+
+        public boolean hasNext() {
+            return cursor != fence;
+        }
+
+        public boolean next() {
+            if (cursor == fence)
+                throw new NoSuchElementException();
+            boolean result = bit(cursor);
+            // This check doesn't catch all possible comodifications,
+            // but does catch the ones that corrupt traversal
+            if (tail != fence)
+                throw new ConcurrentModificationException();
+            cursor = (cursor + 1) & ((words.length << 6) - 1);
+            return result;
+        }
+    }
+
+    /**
+     * Returns a copy of this deque.
+     *
+     * @return a copy of this deque
+     */
+    public BooleanDeque clone() {
+        try {
+            BooleanDeque result = (BooleanDeque) super.clone();
+            result.words = Arrays.copyOf(words, words.length);
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError();
+        }
+    }
+
+    private static final long serialVersionUID = -6021440183946526107L;
+
+    /**
+     * Saves this deque to a stream (that is, serializes it).
+     *
+     * @serialData The current size ({@code int}) of the deque, followed by
+     * its elements packed into {@code long}s, 64 per word in first-to-last
+     * order starting from the least significant bit.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+
+        int size = size();
+        s.writeInt(size);
+        int mask = (words.length << 6) - 1;
+        for (int i = 0; i < size; i += 64) {
+            long w = wordAt((head + i) & mask);
+            if (size - i < 64)
+                w &= (1L << (size - i)) - 1; // drop bits past the tail
+            s.writeLong(w);
+        }
+    }
+
+    /**
+     * Reconstitutes this deque from a stream (that is, deserializes it).
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        int size = s.readInt();
+        if (size < 0 || calculateSize(size) <= size)
+            throw new StreamCorruptedException("Illegal deque size " + size);
+        words = new long[calculateSize(size) >>> 6];
+        head = 0;
+        tail = size;
+        for (int i = 0; i < size; i += 64)
+            words[i >>> 6] = s.readLong();
+        if ((size & 63) != 0)
+            words[size >>> 6] &= (1L << size) - 1; // keep free bits clear
+    }
+
+    /**
+     * Creates a <em>late-binding</em> and <em>fail-fast</em> {@link
+     * BooleanSpliterator} over the elements in this deque.
+     *
+     * <p>The {@code Spliterator} reports {@link BooleanSpliterator#SIZED},
+     * {@link BooleanSpliterator#SUBSIZED}, {@link BooleanSpliterator#ORDERED},
+     * and {@link BooleanSpliterator#NONNULL}.
+     *
+     * @return a {@code Spliterator} over the elements in this deque
+     */
+    public BooleanSpliterator spliterator() {
+        return new DeqSpliterator(this, -1, -1);
+    }
+
+    static final class DeqSpliterator implements BooleanSpliterator {
+        private final BooleanDeque deq;
+        private int fence;  // -1 until first use
+        private int index;  // current index, modified on traverse/split
+
+        /** Creates new spliterator covering the given ring and range */
+        DeqSpliterator(BooleanDeque deq, int origin, int fence) {
+            this.deq = deq;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        private int getFence() { // force initialization
+            int t;
+            if ((t = fence) < 0) {
+                t = fence = deq.tail;
+                index = deq.head;
+            }
+            return t;
+        }
+
+        public DeqSpliterator trySplit() {
+            int t = getFence(), h = index, n = deq.words.length << 6;
+            if (h != t && ((h + 1) & (n - 1)) != t) {
+                if (h > t)
+                    t += n;
+                int m = ((h + t) >>> 1) & (n - 1);
+                return new DeqSpliterator(deq, h, index = m);
+            }
+            return null;
+        }
+
+        public void forEachRemaining(Consumer<Boolean> consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            int m = (deq.words.length << 6) - 1, f = getFence(), i = index;
+            index = f;
+            while (i != f) {
+                boolean e = deq.bit(i);
+                i = (i + 1) & m;
+                consumer.accept(e);
+            }
+        }
+
+        public boolean tryAdvance(Consumer<Boolean> consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            int m = (deq.words.length << 6) - 1;
+            int f = getFence(), i = index;
+            if (i != f) {
+                boolean e = deq.bit(i);
+                index = (i + 1) & m;
+                consumer.accept(e);
+                return true;
+            }
+            return false;
+        }
+
+        public long estimateSize() {
+            int n = getFence() - index;
+            if (n < 0)
+                n += deq.words.length << 6;
+            return n;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | NONNULL | SUBSIZED;
+        }
+    }
+}
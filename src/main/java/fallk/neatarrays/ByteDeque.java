@@ -0,0 +1,2162 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+/*
+ * This file is available under and governed by the GNU General Public
+ * License version 2 only, as published by the Free Software Foundation.
+ * However, the following notice accompanied the original version of this
+ * file:
+ *
+ * Written by Josh Bloch of Google Inc. and released to the public domain,
+ * as explained at http://creativecommons.org/publicdomain/zero/1.0/.
+ */
+
+package fallk.neatarrays;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.IntSummaryStatistics;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Stack;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import fallk.neatarrays.DequeStats;
+import fallk.neatarrays.ByteIterator;
+import fallk.neatarrays.ByteSpliterator;
+import fallk.dev.InternalAssert;
+
+/**
+ * Resizable-array implementation of the {@link Deque} interface.  Array
+ * deques have no capacity restrictions; they grow as necessary to support
+ * usage.  They are not thread-safe; in the absence of external
+ * synchronization, they do not support concurrent access by multiple threads.
+ * Null elements are prohibited.  This class is likely to be faster than
+ * {@link Stack} when used as a stack, and faster than {@link LinkedList}
+ * when used as a queue.
+ *
+ * <p>Most {@code ByteDeque} operations run in amortized constant time.
+ * Exceptions include {@link #remove(byte) remove}, {@link
+ * #removeFirstOccurrence removeFirstOccurrence}, {@link #removeLastOccurrence
+ * removeLastOccurrence}, {@link #contains contains}, {@link #iterator
+ * iterator.remove()}, and the bulk operations, all of which run in linear
+ * time.
+ *
+ * <p>The iterators returned by this class's {@code iterator} method are
+ * <i>fail-fast</i>: If the deque is modified at any time after the iterator
+ * is created, in any way except through the iterator's own {@code remove}
+ * method, the iterator will generally throw a {@link
+ * ConcurrentModificationException}.  Thus, in the face of concurrent
+ * modification, the iterator fails quickly and cleanly, rather than risking
+ * arbitrary, non-deterministic behavior at an undetermined time in the
+ * future.
+ *
+ * <p>Note that the fail-fast behavior of an iterator cannot be guaranteed
+ * as it is, generally speaking, impossible to make any hard guarantees in the
+ * presence of unsynchronized concurrent modification.  Fail-fast iterators
+ * throw {@code ConcurrentModificationException} on a best-effort basis.
+ * Therefore, it would be wrong to write a program that depended on this
+ * exception for its correctness: <i>the fail-fast behavior of iterators
+ * should be used only to detect bugs.</i>
+ *
+ * <p>This class and its iterator implement all of the
+ * <em>optional</em> methods of the {@link Collection} and {@link
+ * Iterator} interfaces.
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @author  Josh Bloch and Doug Lea
+ * @since   1.6
+ * @param <byte> the type of elements held in this collection
+ */
+public class ByteDeque implements Cloneable, Serializable
+{
+    // the primitive value that represents 'null'
+    protected static final byte NULL_VALUE = Byte.MIN_VALUE;
+    
+    /**
+     * The array in which the elements of the deque are stored.
+     * The capacity of the deque is the length of this array, which is
+     * always a power of two. The array is never allowed to become
+     * full, except transiently within an addX method where it is
+     * resized (see doubleCapacity) immediately upon becoming full,
+     * thus avoiding head and tail wrapping around to equal each
+     * other.  We also guarantee that all array cells not holding
+     * deque elements are always equal to {@code NULL_VALUE}.
+     */
+    transient byte[] elements; // non-private to simplify nested class access
+
+    /**
+     * The index of the element at the head of the deque (which is the
+     * element that would be removed by remove() or pop()); or an
+     * arbitrary number equal to tail if the deque is empty.
+     */
+    transient int head;
+
+    /**
+     * The index at which the next element would be added to the tail
+     * of the deque (via addLast(byte), add(byte), or push(byte)).
+     */
+    transient int tail;
+
+    /**
+     * The fraction of the capacity below which the array is halved once
+     * elements are removed, or 0 if the deque never shrinks on its own.
+     * This is a setting of the instance rather than part of its contents,
+     * so it is not serialized.
+     */
+    private transient float shrinkThreshold;
+
+    /**
+     * The size below which removals shrink the array; kept in step with
+     * shrinkThreshold whenever the capacity changes, and 0 when the deque
+     * cannot or may not shrink.
+     */
+    private transient int shrinkSize;
+
+    /**
+     * The statistics of this deque, or {@code null} unless {@link
+     * #enableStats} was called while {@link DequeStats#ENABLED}.  Every hook
+     * tests {@code DequeStats.ENABLED} first, so they cost nothing when
+     * statistics are disabled.  Not serialized, and not shared by clones.
+     */
+    private transient DequeStats stats;
+
+    /**
+     * The minimum capacity that we'll use for a newly created deque.
+     * Must be a power of 2.
+     */
+    private static final int MIN_INITIAL_CAPACITY = 8;
+
+    /**
+     * The largest allowed shrink threshold.  A deque shrunk below it is at
+     * most half full afterwards, so it has to double in size again before
+     * it grows, rather than thrashing between the two capacities.
+     */
+    public static final float MAX_SHRINK_THRESHOLD = 0.25f;
+    
+    /**
+     * initialize a smaller piece of the array and use the System.arraycopy 
+     * call to fill in the rest of the array in an expanding binary fashion
+     */
+    public static void shortFill(byte[] array) {
+      int len = array.length;
+    
+      if (len > 0){
+        array[0] = NULL_VALUE;
+      }
+    
+      for (int i = 1; i < len; i += i) {
+        System.arraycopy(array, 0, array, i, ((len - i) < i) ? (len - i) : i);
+      }
+    }
+
+    // ******  Array allocation and resizing utilities ******
+
+    /**
+     * Returns the smallest power of two large enough to hold the given
+     * number of elements without the array becoming full.
+     *
+     * @param numElements  the number of elements to hold
+     */
+    private static int calculateSize(int numElements) {
+        int initialCapacity = MIN_INITIAL_CAPACITY;
+        // Find the best power of two to hold elements.
+        // Tests "<=" because arrays aren't kept full.
+        if (numElements >= initialCapacity) {
+            initialCapacity = numElements;
+            initialCapacity |= (initialCapacity >>>  1);
+            initialCapacity |= (initialCapacity >>>  2);
+            initialCapacity |= (initialCapacity >>>  4);
+            initialCapacity |= (initialCapacity >>>  8);
+            initialCapacity |= (initialCapacity >>> 16);
+            initialCapacity++;
+
+            if (initialCapacity < 0)   // Too many elements, must back off
+                initialCapacity >>>= 1;// Good luck allocating 2 ^ 30 elements
+        }
+        return initialCapacity;
+    }
+
+    /**
+     * Allocates empty array to hold the given number of elements.
+     *
+     * @param numElements  the number of elements to hold
+     */
+    private void allocateElements(int numElements) {
+        int oldCapacity = elements == null ? 0 : elements.length;
+        elements = new byte[calculateSize(numElements)];
+        shortFill(elements);
+        updateShrinkSize();
+        recordResize(oldCapacity);
+    }
+
+    /**
+     * Doubles the capacity of this deque.  Call only when full, i.e.,
+     * when head and tail have wrapped around to become equal.
+     */
+    private void doubleCapacity() {
+        assert head == tail;
+        int p = head;
+        int n = elements.length;
+        int r = n - p; // number of elements to the right of p
+        int newCapacity = n << 1;
+        if (newCapacity < 0)
+            throw new IllegalStateException("Sorry, deque too big");
+        byte[] a = new byte[newCapacity];
+        shortFill(a);
+        System.arraycopy(elements, p, a, 0, r);
+        System.arraycopy(elements, 0, a, r, p);
+        elements = a;
+        head = 0;
+        tail = n;
+        updateShrinkSize();
+        recordResize(n);
+    }
+
+    /**
+     * Moves the elements into a new array of the given capacity, which must
+     * be a power of two larger than the current size.  The ring is
+     * linearised by the same copy, so the first element ends up at index 0.
+     */
+    private void reallocate(int newCapacity) {
+        int size = size();
+        int oldCapacity = elements.length;
+        byte[] a = new byte[newCapacity];
+        shortFill(a);
+        copyElements(a);
+        elements = a;
+        head = 0;
+        tail = size;
+        updateShrinkSize();
+        recordResize(oldCapacity);
+    }
+
+    private void recordResize(int oldCapacity) {
+        if (DequeStats.ENABLED && stats != null)
+            stats.recordResize(oldCapacity, elements.length, size());
+    }
+
+    private void recordSize() {
+        if (DequeStats.ENABLED && stats != null)
+            stats.recordSize(size());
+    }
+
+    private void updateShrinkSize() {
+        int n = elements.length;
+        shrinkSize = n > MIN_INITIAL_CAPACITY ? (int) (n * shrinkThreshold) : 0;
+    }
+
+    /**
+     * Halves the array, as many times as the shrink threshold calls for,
+     * in a single reallocation.  Called after removals when automatic
+     * shrinking is enabled.
+     */
+    private void shrinkIfSparse() {
+        int size = size();
+        if (size >= shrinkSize)
+            return;
+        int n = elements.length >>> 1;
+        while (n > MIN_INITIAL_CAPACITY && size < (int) (n * shrinkThreshold))
+            n >>>= 1;
+        reallocate(n);
+    }
+
+    /**
+     * Grows the array, at most once, so that {@code n} more elements can be
+     * added without any further resizing.
+     */
+    private void reserve(int n) {
+        int required = size() + n;
+        if (required < 0)
+            throw new IllegalStateException("Sorry, deque too big");
+        ensureCapacity(required);
+    }
+
+    /**
+     * Copies {@code len} elements of {@code src} into the ring starting at
+     * index {@code dst}, wrapping around the end of the array if needed.
+     * The caller must already have made room for them.
+     */
+    private void copyIn(byte[] src, int srcPos, int dst, int len) {
+        byte[] a = elements;
+        int r = Math.min(len, a.length - dst); // slots to the right of dst
+        System.arraycopy(src, srcPos, a, dst, r);
+        System.arraycopy(src, srcPos + r, a, 0, len - r);
+    }
+
+    /**
+     * Copies all elements of {@code d}, in order, into the ring starting at
+     * index {@code dst}.  The caller must already have made room for them.
+     * {@code d} may be this deque, since only free slots are written to.
+     */
+    private void copyIn(ByteDeque d, int dst) {
+        copyIn(d, 0, d.size(), dst);
+    }
+
+    /**
+     * Copies {@code len} elements of {@code d}, starting with the one at
+     * index {@code from}, in order into the ring starting at index {@code
+     * dst}.  The caller must already have made room for them.  {@code d} may
+     * be this deque, since only free slots are written to.
+     */
+    private void copyIn(ByteDeque d, int from, int len, int dst) {
+        byte[] src = d.elements;
+        int s = (d.head + from) & (src.length - 1);
+        int r = Math.min(len, src.length - s); // elements to the right of s
+        copyIn(src, s, dst, r);
+        copyIn(src, 0, (dst + r) & (elements.length - 1), len - r);
+    }
+
+    /**
+     * Copies {@code len} elements of the ring, starting at index {@code src}
+     * and wrapping around the end of the array if needed, into {@code dst}.
+     */
+    private void copyOut(int src, byte[] dst, int dstPos, int len) {
+        byte[] a = elements;
+        int r = Math.min(len, a.length - src); // slots to the right of src
+        System.arraycopy(a, src, dst, dstPos, r);
+        System.arraycopy(a, 0, dst, dstPos + r, len - r);
+    }
+
+    /**
+     * Resets {@code len} slots of the ring, starting at index {@code from}
+     * and wrapping around the end of the array if needed, to
+     * {@code NULL_VALUE}.
+     */
+    private void clearRange(int from, int len) {
+        byte[] a = elements;
+        int r = Math.min(len, a.length - from);
+        Arrays.fill(a, from, from + r, NULL_VALUE);
+        Arrays.fill(a, 0, len - r, NULL_VALUE);
+    }
+
+    /**
+     * Removes the first {@code n} elements, of which there must be at least
+     * that many, and shrinks the array if automatic shrinking calls for it.
+     * The common tail of the bulk removal methods.
+     */
+    private void discardFirst(int n) {
+        int h = head;
+        clearRange(h, n);
+        head = (h + n) & (elements.length - 1);
+        if (shrinkSize != 0)
+            shrinkIfSparse();
+    }
+
+    /**
+     * Copies the elements from our element array into the specified array,
+     * in order (from first to last element in the deque).  It is assumed
+     * that the array is large enough to hold all elements in the deque.
+     *
+     * @return its argument
+     */
+    private byte[] copyElements(byte[] a) {
+        if (head < tail) {
+            System.arraycopy(elements, head, a, 0, size());
+        } else if (head > tail) {
+            int headPortionLen = elements.length - head;
+            System.arraycopy(elements, head, a, 0, headPortionLen);
+            System.arraycopy(elements, 0, a, headPortionLen, tail);
+        }
+        return a;
+    }
+
+    /**
+     * Constructs an empty array deque with an initial capacity
+     * sufficient to hold 16 elements.
+     */
+    public ByteDeque() {
+        elements = new byte[16];
+        shortFill(elements);
+    }
+
+    /**
+     * Constructs an empty array deque with an initial capacity
+     * sufficient to hold the specified number of elements.
+     *
+     * @param numElements  lower bound on initial capacity of the deque
+     */
+    public ByteDeque(int numElements) {
+        allocateElements(numElements);
+    }
+
+    /**
+     * Constructs a deque containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.  (The first element returned by the collection's
+     * iterator becomes the first element, or <i>front</i> of the
+     * deque.)
+     *
+     * @param c the collection whose elements are to be placed into the deque
+     * @throws NullPointerException if the specified collection is NULL_VALUE
+     */
+    public ByteDeque(Collection<Byte> c) {
+        allocateElements(c.size());
+        addAll(c);
+    }
+
+    public void addAll(Collection<Byte> c) {
+        reserve(c.size());
+        for (Byte s : c) {
+            add(s);
+        }
+    }
+
+    /**
+     * Inserts the elements of the specified array at the end of this deque,
+     * in array order.  The deque is grown at most once, straight to the
+     * capacity needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllLast(byte[] a) {
+        addAllLast(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the end of this deque, in array order.  The deque is
+     * grown at most once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllLast(byte[] a, int off, int len) {
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int t = tail;
+        copyIn(a, off, t, len);
+        tail = (t + len) & (elements.length - 1);
+        recordSize();
+    }
+
+    /**
+     * Inserts all elements of the specified deque at the end of this deque,
+     * in the order they appear in {@code d}.  The deque is grown at most
+     * once, straight to the capacity needed.
+     *
+     * @param d the deque whose elements are to be added; may be this deque
+     */
+    public void addAllLast(ByteDeque d) {
+        int n = d.size();
+        if (n == 0)
+            return;
+        reserve(n);
+        int t = tail;
+        copyIn(d, t);
+        tail = (t + n) & (elements.length - 1);
+        recordSize();
+    }
+
+    /**
+     * Inserts the elements of the specified array at the front of this
+     * deque.  The array order is kept, so {@code a[0]} becomes the first
+     * element.  The deque is grown at most once, straight to the capacity
+     * needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllFirst(byte[] a) {
+        addAllFirst(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the front of this deque.  The array order is kept, so
+     * {@code a[off]} becomes the first element.  The deque is grown at most
+     * once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllFirst(byte[] a, int off, int len) {
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int h = (head - len) & (elements.length - 1);
+        copyIn(a, off, h, len);
+        head = h;
+        recordSize();
+    }
+
+    /**
+     * Inserts all elements of the specified deque at the front of this
+     * deque.  Their order is kept, so the first element of {@code d} becomes
+     * the first element of this deque.  The deque is grown at most once,
+     * straight to the capacity needed.
+     *
+     * @param d the deque whose elements are to be added; may be this deque
+     */
+    public void addAllFirst(ByteDeque d) {
+        int n = d.size();
+        if (n == 0)
+            return;
+        reserve(n);
+        int h = (head - n) & (elements.length - 1);
+        copyIn(d, h);
+        head = h;
+        recordSize();
+    }
+
+    // The main insertion and extraction methods are addFirst,
+    // addLast, pollFirst, pollLast. The other methods are defined in
+    // terms of these.
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     * @throws NullPointerException if the specified element is NULL_VALUE
+     */
+    public void addFirst(byte e) {
+        elements[head = (head - 1) & (elements.length - 1)] = e;
+        if (head == tail)
+            doubleCapacity();
+        recordSize();
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * <p>This method is equivalent to {@link #add}.
+     *
+     * @param e the element to add
+     * @throws NullPointerException if the specified element is NULL_VALUE
+     */
+    public void addLast(byte e) {
+        elements[tail] = e;
+        if ( (tail = (tail + 1) & (elements.length - 1)) == head)
+            doubleCapacity();
+        recordSize();
+    }
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Deque#offerFirst})
+     * @throws NullPointerException if the specified element is NULL_VALUE
+     */
+    public boolean offerFirst(byte e) {
+        addFirst(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Deque#offerLast})
+     * @throws NullPointerException if the specified element is NULL_VALUE
+     */
+    public boolean offerLast(byte e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public byte removeFirst() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollFirst();
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public byte removeLast() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollLast();
+    }
+
+    public byte pollFirst() {
+        int h = head;
+
+        // Element is NULL_VALUE if deque empty
+        if (h == tail) // isEmpty()
+            return NULL_VALUE;
+        
+        byte result = elements[h];
+        elements[h] = NULL_VALUE; // Must NULL_VALUE out slot
+        head = (h + 1) & (elements.length - 1);
+        if (shrinkSize != 0)
+            shrinkIfSparse();
+        return result;
+    }
+
+    public byte pollLast() {
+        // Element is NULL_VALUE if deque empty
+        if (head == tail) // not `t` here // isEmpty()
+            return NULL_VALUE;
+        
+        int t = (tail - 1) & (elements.length - 1);
+        
+        byte result = elements[t];
+        elements[t] = NULL_VALUE; // Must NULL_VALUE out slot
+        tail = t;
+        if (shrinkSize != 0)
+            shrinkIfSparse();
+        return result;
+    }
+
+    /**
+     * Retrieves and removes up to {@code max} elements from the head of this
+     * deque, storing them in order in {@code dst} starting at {@code off}.
+     * The elements are moved with at most two array copies, and head is
+     * advanced once.
+     *
+     * @param dst the array to store the elements in
+     * @param off the index in {@code dst} of the first element
+     * @param max the maximum number of elements to remove
+     * @return the number of elements removed, which is {@code 0} if this
+     *         deque is empty
+     * @throws IndexOutOfBoundsException if {@code off} or {@code max} is
+     *         negative, or {@code off + max} is greater than {@code dst.length}
+     */
+    public int pollFirst(byte[] dst, int off, int max) {
+        if (off < 0 || max < 0 || max > dst.length - off)
+            throw new IndexOutOfBoundsException();
+        int n = Math.min(max, size());
+        if (n == 0)
+            return 0;
+        copyOut(head, dst, off, n);
+        discardFirst(n);
+        return n;
+    }
+
+    /**
+     * Removes all elements of this deque and adds them, in order, to the end
+     * of the specified deque.
+     *
+     * @param d the deque to transfer the elements to
+     * @return the number of elements transferred
+     * @throws IllegalArgumentException if {@code d} is this deque
+     */
+    public int drainTo(ByteDeque d) {
+        return drainTo(d, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes up to {@code max} elements from the head of this deque and
+     * adds them, in order, to the end of the specified deque.  The target is
+     * grown at most once, and the elements are moved segment by segment
+     * rather than one at a time.
+     *
+     * @param d the deque to transfer the elements to
+     * @param max the maximum number of elements to transfer
+     * @return the number of elements transferred
+     * @throws IllegalArgumentException if {@code d} is this deque
+     */
+    public int drainTo(ByteDeque d, int max) {
+        if (d == this)
+            throw new IllegalArgumentException();
+        int n = Math.min(max, size());
+        if (n <= 0)
+            return 0;
+        d.reserve(n);
+        int h = head;
+        int t = d.tail;
+        int r = Math.min(n, elements.length - h); // elements to the right of h
+        d.copyIn(elements, h, t, r);
+        d.copyIn(elements, 0, (t + r) & (d.elements.length - 1), n - r);
+        d.tail = (t + n) & (d.elements.length - 1);
+        d.recordSize();
+        discardFirst(n);
+        return n;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public byte getFirst() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return elements[head];
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public byte getLast() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return elements[(tail - 1) & (elements.length - 1)];
+    }
+
+    
+    public byte peekFirst() {
+        // elements[head] is NULL_VALUE if deque empty
+        return elements[head];
+    }
+
+    
+    public byte peekLast() {
+        // is NULL_VALUE if deque empty
+        return elements[(tail - 1) & (elements.length - 1)];
+    }
+
+    // *** Queue methods ***
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * <p>This method is equivalent to {@link #addLast}.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Collection#add})
+     * @throws NullPointerException if the specified element is NULL_VALUE
+     */
+    public boolean add(byte e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * <p>This method is equivalent to {@link #offerLast}.
+     *
+     * @param e the element to add
+     * @return {@code true} (as specified by {@link Queue#offer})
+     * @throws NullPointerException if the specified element is NULL_VALUE
+     */
+    public boolean offer(byte e) {
+        return offerLast(e);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     *
+     * This method differs from {@link #poll poll} only in that it throws an
+     * exception if this deque is empty.
+     *
+     * <p>This method is equivalent to {@link #removeFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public byte remove() {
+        return removeFirst();
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque
+     * (in other words, the first element of this deque), or returns
+     * {@code NULL_VALUE} if this deque is empty.
+     *
+     * <p>This method is equivalent to {@link #pollFirst}.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code NULL_VALUE} if this deque is empty
+     */
+    public byte poll() {
+        return pollFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.  This method differs from {@link #peek peek} only in
+     * that it throws an exception if this deque is empty.
+     *
+     * <p>This method is equivalent to {@link #getFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public byte element() {
+        return getFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque, or returns {@code NULL_VALUE} if this deque is empty.
+     *
+     * <p>This method is equivalent to {@link #peekFirst}.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code NULL_VALUE} if this deque is empty
+     */
+    public byte peek() {
+        return peekFirst();
+    }
+
+    // *** Stack methods ***
+
+    /**
+     * Pushes an element onto the stack represented by this deque.  In other
+     * words, inserts the element at the front of this deque.
+     *
+     * <p>This method is equivalent to {@link #addFirst}.
+     *
+     * @param e the element to push
+     * @throws NullPointerException if the specified element is NULL_VALUE
+     */
+    public void push(byte e) {
+        addFirst(e);
+    }
+
+    /**
+     * Pops an element from the stack represented by this deque.  In other
+     * words, removes and returns the first element of this deque.
+     *
+     * <p>This method is equivalent to {@link #removeFirst()}.
+     *
+     * @return the element at the front of this deque (which is the top
+     *         of the stack represented by this deque)
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public byte pop() {
+        return removeFirst();
+    }
+
+    void checkInvariants() {
+        assert (elements.length & (elements.length - 1)) == 0;
+        assert elements[tail] == NULL_VALUE;
+        assert head == tail ? elements[head] == NULL_VALUE :
+            (elements[head] != NULL_VALUE &&
+             elements[(tail - 1) & (elements.length - 1)] != NULL_VALUE);
+        assert elements[(head - 1) & (elements.length - 1)] == NULL_VALUE;
+    }
+
+    public void jUnitAssertInvariants() {
+        InternalAssert.assertTrue((elements.length & (elements.length - 1)) == 0);
+        InternalAssert.assertTrue(elements[tail] == NULL_VALUE);
+        InternalAssert.assertTrue(head == tail ? elements[head] == NULL_VALUE :
+            (elements[head] != NULL_VALUE &&
+            elements[(tail - 1) & (elements.length - 1)] != NULL_VALUE));
+        InternalAssert.assertTrue(elements[(head - 1) & (elements.length - 1)] == NULL_VALUE);
+    }
+
+    /**
+     * Removes the element at the specified position in the elements array,
+     * adjusting head and tail as necessary.  This can result in motion of
+     * elements backwards or forwards in the array.
+     *
+     * <p>This method is called delete rather than remove to emphasize
+     * that its semantics differ from those of {@link List#remove(int)}.
+     *
+     * @return true if elements moved backwards
+     */
+    public boolean delete(int i) {
+        checkInvariants();
+        final byte[] elements = this.elements;
+        final int mask = elements.length - 1;
+        final int h = head;
+        final int t = tail;
+        final int front = (i - h) & mask;
+        final int back  = (t - i) & mask;
+
+        // Invariant: head <= i < tail mod circularity
+        if (front >= ((t - h) & mask))
+            throw new ConcurrentModificationException();
+
+        // Optimize for least element motion
+        if (front < back) {
+            if (h <= i) {
+                System.arraycopy(elements, h, elements, h + 1, front);
+            } else { // Wrap around
+                System.arraycopy(elements, 0, elements, 1, i);
+                elements[0] = elements[mask];
+                System.arraycopy(elements, h, elements, h + 1, mask - h);
+            }
+            elements[h] = NULL_VALUE;
+            head = (h + 1) & mask;
+            return false;
+        } else {
+            if (i < t) { // Copy the NULL_VALUE tail as well
+                System.arraycopy(elements, i + 1, elements, i, back);
+                tail = t - 1;
+            } else { // Wrap around
+                System.arraycopy(elements, i + 1, elements, i, mask - i);
+                elements[mask] = elements[0];
+                System.arraycopy(elements, 1, elements, 0, t);
+                tail = (t - 1) & mask;
+            }
+            return true;
+        }
+    }
+
+    // *** Collection Methods ***
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque
+     */
+    public int size() {
+        return (tail - head) & (elements.length - 1);
+    }
+
+    /**
+     * Returns the number of elements this deque can contain without increasing in size.
+     * 
+     * @return the number of elements this deque can contain without increasing in size.
+     */
+    public int space() {
+        return elements.length;
+    }
+
+    /**
+     * Starts collecting {@link DequeStats statistics} on this deque, if
+     * statistics are {@link DequeStats#ENABLED enabled}; otherwise does
+     * nothing.  The current array counts as the first allocation.  Calling
+     * this method again keeps the statistics already collected.
+     *
+     * @return the statistics of this deque, or {@code null} if statistics
+     *         are disabled
+     */
+    public DequeStats enableStats() {
+        if (DequeStats.ENABLED && stats == null)
+            stats = new DequeStats(Byte.BYTES, elements.length, size());
+        return stats;
+    }
+
+    /**
+     * Returns the statistics of this deque, with its current size sampled
+     * into them, or {@code null} if they were never {@link #enableStats
+     * enabled}.
+     *
+     * @return the statistics of this deque, or {@code null}
+     */
+    public DequeStats stats() {
+        DequeStats s = stats;
+        if (s != null)
+            s.recordSize(size());
+        return s;
+    }
+
+    /**
+     * Increases the capacity of this deque, if necessary, so that it can
+     * hold at least {@code minCapacity} elements without growing again.
+     * The array is reallocated at most once, straight to the required power
+     * of two, and the ring is linearised by the same copy.
+     *
+     * <p>If automatic shrinking is enabled, removing elements before the
+     * capacity is used may shrink the deque again.
+     *
+     * @param minCapacity the desired minimum capacity
+     * @throws IllegalStateException if {@code minCapacity} is more than the
+     *         largest deque can hold
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity < elements.length)
+            return;
+        int newCapacity = calculateSize(minCapacity);
+        if (newCapacity <= minCapacity)
+            throw new IllegalStateException("Sorry, deque too big");
+        reallocate(newCapacity);
+    }
+
+    /**
+     * Shrinks the capacity of this deque to the smallest power of two that
+     * holds its current elements.  An application can use this operation to
+     * release the memory left behind by a burst of elements.
+     */
+    public void trimToSize() {
+        int n = calculateSize(size());
+        if (n < elements.length)
+            reallocate(n);
+    }
+
+    /**
+     * Enables or disables automatic shrinking.  When enabled, removing an
+     * element from a deque that is less than {@code threshold} full halves
+     * its capacity (repeatedly, if need be, but in one reallocation), never
+     * going below the minimum capacity.  Since a shrunk deque is at most
+     * half full, it does not grow again until it has doubled in size.
+     *
+     * <p>The setting is not serialized and starts out disabled.
+     *
+     * @param threshold the fraction of the capacity below which the deque
+     *        shrinks, or {@code 0} to disable automatic shrinking
+     * @throws IllegalArgumentException if {@code threshold} is negative or
+     *         greater than {@link #MAX_SHRINK_THRESHOLD}
+     */
+    public void setShrinkThreshold(float threshold) {
+        if (!(threshold >= 0 && threshold <= MAX_SHRINK_THRESHOLD))
+            throw new IllegalArgumentException("Illegal shrink threshold: " + threshold);
+        shrinkThreshold = threshold;
+        updateShrinkSize();
+    }
+
+    /**
+     * Returns the fraction of the capacity below which this deque shrinks,
+     * or {@code 0} if automatic shrinking is disabled.
+     *
+     * @return the shrink threshold of this deque
+     */
+    public float getShrinkThreshold() {
+        return shrinkThreshold;
+    }
+
+    /**
+     * Returns {@code true} if this deque contains no elements.
+     *
+     * @return {@code true} if this deque contains no elements
+     */
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque.  The elements
+     * will be ordered from first (head) to last (tail).  This is the same
+     * order that elements would be dequeued (via successive calls to
+     * {@link #remove} or popped (via successive calls to {@link #pop}).
+     *
+     * @return an iterator over the elements in this deque
+     */
+    public ByteIterator iterator() {
+        return new DeqIterator();
+    }
+
+    public ByteIterator descendingIterator() {
+        return new DescendingIterator();
+    }
+
+    private class DeqIterator implements ByteIterator {
+        /**
+         * Index of element to be returned by subsequent call to next.
+         */
+        private int cursor = head;
+
+        /**
+         * Tail recorded at construction (also in remove), to stop
+         * iterator and also to check for comodification.
+         */
+        private int fence = tail;
+
+        /**
+         * Index of element returned by most recent call to next.
+         * Reset to -1 if element is deleted by a call to remove.
+         */
+        private int lastRet = -1;
+
+        public boolean hasNext() {
+            return cursor != fence;
+        }
+
+        public byte next() {
+            if (cursor == fence)
+                throw new NoSuchElementException();
+            
+            byte result = elements[cursor];
+            // This check doesn't catch all possible comodifications,
+            // but does catch the ones that corrupt traversal
+            if (tail != fence)
+                throw new ConcurrentModificationException();
+            lastRet = cursor;
+            cursor = (cursor + 1) & (elements.length - 1);
+            return result;
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            if (delete(lastRet)) { // if left-shifted, undo increment in next()
+                cursor = (cursor - 1) & (elements.length - 1);
+                fence = tail;
+            }
+            lastRet = -1;
+        }
+    }
+
+    private class DescendingIterator implements ByteIterator {
+        /*
+         * This class is nearly a mirror-image of DeqIterator, using
+         * tail instead of head for initial cursor, and head instead of
+         * tail for fence.
+         */
+        private int cursor = tail;
+        private int fence = head;
+        private int lastRet = -1;
+
+        public boolean hasNext() {
+            return cursor != fence;
+        }
+
+        public byte next() {
+            if (cursor == fence)
+                throw new NoSuchElementException();
+            cursor = (cursor - 1) & (elements.length - 1);
+            
+            byte result = elements[cursor];
+            if (head != fence)
+                throw new ConcurrentModificationException();
+            lastRet = cursor;
+            return result;
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            if (!delete(lastRet)) {
+                cursor = (cursor + 1) & (elements.length - 1);
+                fence = head;
+            }
+            lastRet = -1;
+        }
+    }
+
+    /**
+     * Returns {@code true} if this deque contains the specified element.
+     * More formally, returns {@code true} if and only if this deque contains
+     * at least one element {@code e} such that {@code o.equals(e)}.
+     *
+     * @param o byte to be checked for containment in this deque
+     * @return {@code true} if this deque contains the specified element
+     */
+    public boolean contains(byte o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * <p>The ring is searched as at most two contiguous runs of the array,
+     * with plain counted loops the JIT can unroll.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the element, or -1
+     */
+    public int indexOf(byte o) {
+        final byte[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        for (int i = h; i < end; i++)
+            if (es[i] == o)
+                return i - h;
+        if (h > t) { // wrapped; continue at the start of the array
+            for (int i = 0; i < t; i++)
+                if (es[i] == o)
+                    return es.length - h + i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the element, or -1
+     * @see #indexOf(byte)
+     */
+    public int lastIndexOf(byte o) {
+        final byte[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h > t) { // wrapped; start with the run at the start of the array
+            for (int i = t - 1; i >= 0; i--)
+                if (es[i] == o)
+                    return es.length - h + i;
+        }
+        final int end = h <= t ? t : es.length;
+        for (int i = end - 1; i >= h; i--)
+            if (es[i] == o)
+                return i - h;
+        return -1;
+    }
+
+    /**
+     * Removes a single instance of the specified element from this deque.
+     * If the deque does not contain the element, it is unchanged.
+     * More formally, removes the first element {@code e} such that
+     * {@code o.equals(e)} (if such an element exists).
+     * Returns {@code true} if this deque contained the specified element
+     * (or equivalently, if this deque changed as a result of the call).
+     *
+     * <p>This method is equivalent to {@link #removeFirstOccurrence(byte)}.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return {@code true} if this deque contained the specified element
+     */
+    public boolean remove(byte o) {
+        return removeFirstOccurrence(o);
+    }
+
+    /**
+     * Removes the first occurrence of the specified element in this
+     * deque (when traversing the deque from head to tail).
+     * If the deque does not contain the element, it is unchanged.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return {@code true} if the deque contained the specified element
+     */
+    public boolean removeFirstOccurrence(byte o) {
+        int i = indexOf(o);
+        if (i < 0)
+            return false;
+        delete((head + i) & (elements.length - 1));
+        return true;
+    }
+
+    /**
+     * Removes the last occurrence of the specified element in this
+     * deque (when traversing the deque from head to tail).
+     * If the deque does not contain the element, it is unchanged.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return {@code true} if the deque contained the specified element
+     */
+    public boolean removeLastOccurrence(byte o) {
+        int i = lastIndexOf(o);
+        if (i < 0)
+            return false;
+        delete((head + i) & (elements.length - 1));
+        return true;
+    }
+
+    /**
+     * Removes all of the elements of this deque that satisfy the given
+     * predicate.  The survivors are compacted towards the head in a single
+     * pass, and only the slots freed at the tail are reset afterwards.
+     *
+     * <p>If the predicate throws, the elements it has not been applied to
+     * yet are kept, and the exception is relayed to the caller.
+     *
+     * @param filter a predicate which returns {@code true} for elements to
+     *        be removed
+     * @return {@code true} if any elements were removed
+     * @throws NullPointerException if the specified filter is null
+     */
+    public boolean removeIf(IntPredicate filter) {
+        if (filter == null)
+            throw new NullPointerException();
+        final byte[] es = elements;
+        final int mask = es.length - 1;
+        final int t = tail;
+        int i = head;
+        // The leading run of survivors stays where it is
+        while (i != t && !filter.test(es[i]))
+            i = (i + 1) & mask;
+        if (i == t)
+            return false;
+        int w = i; // where the next survivor goes
+        try {
+            for (i = (i + 1) & mask; i != t; i = (i + 1) & mask) {
+                byte e = es[i];
+                if (!filter.test(e)) {
+                    es[w] = e;
+                    w = (w + 1) & mask;
+                }
+            }
+        } finally {
+            // Only does anything if the filter threw
+            for (; i != t; i = (i + 1) & mask, w = (w + 1) & mask)
+                es[w] = es[i];
+            clearRange(w, (t - w) & mask);
+            tail = w;
+        }
+        if (shrinkSize != 0)
+            shrinkIfSparse();
+        return true;
+    }
+
+    /**
+     * Removes all of the elements of this deque that are also contained in
+     * the specified array.  Membership is decided as by {@link
+     * Arrays#binarySearch(byte[], byte)} on a sorted copy of the
+     * array, so the whole operation takes O((n + m) log m) time.
+     *
+     * @param a array containing the elements to be removed from this deque
+     * @return {@code true} if this deque changed as a result of the call
+     */
+    public boolean removeAll(byte[] a) {
+        return removeIfContained(a.clone(), true);
+    }
+
+    /**
+     * Removes all of the elements of this deque that are also contained in
+     * the specified deque.
+     *
+     * @param d deque containing the elements to be removed from this deque;
+     *        may be this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @see #removeAll(byte[])
+     */
+    public boolean removeAll(ByteDeque d) {
+        return removeIfContained(d.toArray(), true);
+    }
+
+    /**
+     * Retains only the elements of this deque that are contained in the
+     * specified array.  Membership is decided as by {@link
+     * Arrays#binarySearch(byte[], byte)} on a sorted copy of the
+     * array, so the whole operation takes O((n + m) log m) time.
+     *
+     * @param a array containing the elements to be retained in this deque
+     * @return {@code true} if this deque changed as a result of the call
+     */
+    public boolean retainAll(byte[] a) {
+        return removeIfContained(a.clone(), false);
+    }
+
+    /**
+     * Retains only the elements of this deque that are contained in the
+     * specified deque.
+     *
+     * @param d deque containing the elements to be retained in this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @see #retainAll(byte[])
+     */
+    public boolean retainAll(ByteDeque d) {
+        return removeIfContained(d.toArray(), false);
+    }
+
+    /**
+     * Removes the elements whose presence in {@code a}, which is sorted in
+     * place, equals {@code contained}.
+     */
+    private boolean removeIfContained(byte[] a, boolean contained) {
+        Arrays.sort(a);
+        return removeIf(e -> (Arrays.binarySearch(a, (byte) e) >= 0) == contained);
+    }
+
+    /**
+     * Removes the element at the specified position in this deque, counting
+     * from the head.  Whichever side of the element is shorter is shifted
+     * to close the gap.
+     *
+     * @param index the index of the element to be removed
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public byte removeAt(int index) {
+        checkIndex(index);
+        int i = (head + index) & (elements.length - 1);
+        byte result = elements[i];
+        delete(i);
+        return result;
+    }
+
+    /**
+     * Returns the element at the specified position in this deque, counting
+     * from the head.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this deque
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public byte get(int index) {
+        checkIndex(index);
+        return elements[(head + index) & (elements.length - 1)];
+    }
+
+    /**
+     * Replaces the element at the specified position in this deque, counting
+     * from the head, with the specified element.
+     *
+     * @param index index of the element to replace
+     * @param e element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public byte set(int index, byte e) {
+        checkIndex(index);
+        int i = (head + index) & (elements.length - 1);
+        byte result = elements[i];
+        elements[i] = e;
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        int size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Removes all of the elements from this deque.
+     * The deque will be empty after this call returns.
+     */
+    public void clear() {
+        int h = head;
+        int t = tail;
+        if (h != t) { // clear all cells
+            head = tail = 0;
+            int i = h;
+            int mask = elements.length - 1;
+            do {
+                elements[i] = NULL_VALUE;
+                i = (i + 1) & mask;
+            } while (i != t);
+            if (shrinkSize != 0)
+                shrinkIfSparse();
+        }
+    }
+
+    // *** Aggregate methods ***
+
+    /**
+     * Returns the sum of the elements in this deque, or {@code 0} if it is
+     * empty.  The elements are summed in place, without boxing or copying.
+     *
+     * @return the sum of the elements in this deque
+     */
+    public long sum() {
+        final byte[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        long sum = 0;
+        for (int i = h; i < end; i++)
+            sum += es[i];
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                sum += es[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the smallest element in this deque, as by {@link Math#min}.
+     *
+     * @return the smallest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public byte min() {
+        final byte[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h == t) // isEmpty()
+            throw new NoSuchElementException();
+        final int end = h <= t ? t : es.length;
+        byte min = es[h];
+        for (int i = h + 1; i < end; i++)
+            min = (byte) Math.min(min, es[i]);
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                min = (byte) Math.min(min, es[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the largest element in this deque, as by {@link Math#max}.
+     *
+     * @return the largest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public byte max() {
+        final byte[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h == t) // isEmpty()
+            throw new NoSuchElementException();
+        final int end = h <= t ? t : es.length;
+        byte max = es[h];
+        for (int i = h + 1; i < end; i++)
+            max = (byte) Math.max(max, es[i]);
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                max = (byte) Math.max(max, es[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of the elements in this deque.
+     *
+     * @return the average of the elements in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public double average() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return (double) sum() / size();
+    }
+
+    /**
+     * Returns the count, sum, min, max and average of the elements in this
+     * deque, gathered in a single pass.
+     *
+     * @return the summary statistics of the elements in this deque
+     */
+    public IntSummaryStatistics summaryStatistics() {
+        final byte[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        IntSummaryStatistics stats = new IntSummaryStatistics();
+        for (int i = h; i < end; i++)
+            stats.accept(es[i]);
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                stats.accept(es[i]);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the sum of the elements in this deque, computed in parallel
+     * on the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the sum of the elements in this deque
+     * @see #sum()
+     */
+    public long parallelSum() {
+        return parallelSummaryStatistics().getSum();
+    }
+
+    /**
+     * Returns the smallest element in this deque, computed in parallel on
+     * the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the smallest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #min()
+     */
+    public byte parallelMin() {
+        return (byte) parallelStream().min().getAsInt();
+    }
+
+    /**
+     * Returns the largest element in this deque, computed in parallel on
+     * the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the largest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #max()
+     */
+    public byte parallelMax() {
+        return (byte) parallelStream().max().getAsInt();
+    }
+
+    /**
+     * Returns the arithmetic mean of the elements in this deque, computed
+     * in parallel on the common fork-join pool.  Only worthwhile for very
+     * large deques.
+     *
+     * @return the average of the elements in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #average()
+     */
+    public double parallelAverage() {
+        return parallelStream().average().getAsDouble();
+    }
+
+    /**
+     * Returns the summary statistics of the elements in this deque,
+     * computed in parallel on the common fork-join pool.  Only worthwhile
+     * for very large deques.
+     *
+     * @return the summary statistics of the elements in this deque
+     * @see #summaryStatistics()
+     */
+    public IntSummaryStatistics parallelSummaryStatistics() {
+        return parallelStream().summaryStatistics();
+    }
+
+    // *** Sorting and searching ***
+
+    /**
+     * Moves the elements to the start of the array, so that head is 0 and
+     * they occupy {@code elements[0, size)} in order.
+     */
+    private void linearize() {
+        int h = head;
+        int t = tail;
+        if (h == 0)
+            return;
+        if (h < t) {
+            int size = t - h;
+            System.arraycopy(elements, h, elements, 0, size);
+            Arrays.fill(elements, Math.max(size, h), t, NULL_VALUE);
+            head = 0;
+            tail = size;
+        } else if (h == t) { // isEmpty()
+            head = tail = 0;
+        } else {
+            // rotate the whole array left by h, without a second array:
+            // [tail part, free, head part] becomes [head part, tail part, free]
+            byte[] a = elements;
+            int size = size();
+            reverse(a, 0, h);
+            reverse(a, h, a.length);
+            reverse(a, 0, a.length);
+            head = 0;
+            tail = size;
+        }
+    }
+
+    /**
+     * Reverses the order of {@code a[from, to)} in place.
+     */
+    private static void reverse(byte[] a, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            byte x = a[i];
+            a[i] = a[j];
+            a[j] = x;
+        }
+    }
+
+    /**
+     * Sorts the elements of this deque into ascending numerical order, as
+     * by {@link Arrays#sort(byte[])}.  The ring is first linearised in
+     * place, so the first element ends up at the start of the array, and
+     * then sorted there without copying it out.
+     */
+    public void sort() {
+        linearize();
+        Arrays.sort(elements, 0, tail);
+    }
+
+    /**
+     * Sorts the elements of this deque into ascending numerical order, as
+     * by {@link Arrays#parallelSort(byte[])}.  This is {@link #sort()}
+     * on the common fork-join pool, and is only worthwhile for very large
+     * deques.
+     */
+    public void parallelSort() {
+        linearize();
+        Arrays.parallelSort(elements, 0, tail);
+    }
+
+    /**
+     * Searches this deque for the specified value using the binary search
+     * algorithm.  The deque must be sorted (as by {@link #sort()}) prior to
+     * making this call; elements may have been added or removed at either
+     * end since, as long as the order is kept.  If it is not sorted, the
+     * results are undefined.  If the deque contains multiple elements with
+     * the specified value, there is no guarantee which one will be found.
+     *
+     * @param key the value to be searched for
+     * @return index of the search key, counting from the head, if it is
+     *         contained in the deque; otherwise,
+     *         <tt>(-(<i>insertion point</i>) - 1)</tt>, as in {@link
+     *         Arrays#binarySearch(byte[], byte)}
+     */
+    public int binarySearch(byte key) {
+        final byte[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h <= t) {
+            int r = Arrays.binarySearch(es, h, t, key);
+            return r >= 0 ? r - h : r + h;
+        }
+        // wrapped; [h, es.length) holds the smaller half, [0, t) the larger
+        if (t > 0 && Byte.compare(key, es[0]) >= 0) {
+            int offset = es.length - h;
+            int r = Arrays.binarySearch(es, 0, t, key);
+            return r >= 0 ? r + offset : r - offset;
+        }
+        int r = Arrays.binarySearch(es, h, es.length, key);
+        return r >= 0 ? r - h : r + h;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this deque
+     * in proper sequence (from first to last element).
+     *
+     * <p>The returned array will be "safe" in that no references to it are
+     * maintained by this deque.  (In other words, this method must allocate
+     * a new array).  The caller is thus free to modify the returned array.
+     *
+     * <p>This method acts as bridge between array-based and collection-based
+     * APIs.
+     *
+     * @return an array containing all of the elements in this deque
+     */
+    public byte[] toArray() {
+        return copyElements(new byte[size()]);
+    }
+
+    // *** byte methods ***
+
+    /**
+     * Returns a copy of this deque.
+     *
+     * @return a copy of this deque
+     */
+    public ByteDeque clone() {
+        try {
+            
+            ByteDeque result = (ByteDeque) super.clone();
+            result.elements = Arrays.copyOf(elements, elements.length);
+            result.stats = null;
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError();
+        }
+    }
+
+    private static final long serialVersionUID = 2340985798034038923L;
+
+    /**
+     * Tag written in front of the compact serial form.  It is negative so
+     * that it can never be mistaken for the size header that started the
+     * original one-object-per-element form.
+     */
+    private static final int COMPACT_FORMAT = -1;
+
+    /**
+     * Size in bytes of the buffer elements are staged in while they are
+     * written or read in bulk.
+     */
+    private static final int SERIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * Saves this deque to a stream (that is, serializes it).
+     *
+     * @serialData The {@code int} tag {@code -1}, then the current size
+     * ({@code int}) of the deque, followed by all of its elements as raw
+     * big-endian {@code byte}s in first-to-last order.  Streams
+     * which start with a non-negative size instead of the tag hold each
+     * element as an object reference, and can still be read.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws java.io.IOException {
+        s.defaultWriteObject();
+        writeTo(s);
+    }
+
+    /**
+     * Reconstitutes this deque from a stream (that is, deserializes it).
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        int format = s.readInt();
+        if (format >= 0) { // legacy form, the tag is the size
+            allocateElements(format);
+            head = 0;
+            tail = format;
+
+            for (int i = 0; i < format; i++)
+                elements[i] = (Byte) s.readObject();
+        } else {
+            readCompact(s, format);
+        }
+    }
+
+    /**
+     * Writes the elements of this deque to the specified output in the
+     * compact serial form: a format tag, the size, and then the elements as
+     * raw {@code byte}s, staged through a byte buffer so they are
+     * written in bulk.
+     *
+     * <p>This is the same encoding {@code writeObject} uses, without any
+     * of the serialization machinery around it; an {@link
+     * java.io.Externalizable} holder can call it from {@code writeExternal}.
+     *
+     * @param out the output to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int size = size();
+        out.writeInt(COMPACT_FORMAT);
+        out.writeInt(size);
+
+        byte[] buf = new byte[Math.min(size, SERIAL_BUFFER_SIZE / Byte.BYTES) * Byte.BYTES];
+        ByteBuffer view = ByteBuffer.wrap(buf).slice();
+        int h = head;
+        int t = tail;
+        if (h <= t) {
+            writeRange(out, buf, view, h, t);
+        } else {
+            writeRange(out, buf, view, h, elements.length);
+            writeRange(out, buf, view, 0, t);
+        }
+    }
+
+    private void writeRange(DataOutput out, byte[] buf, ByteBuffer view,
+            int from, int to) throws IOException {
+        while (from < to) {
+            int n = Math.min(to - from, view.capacity());
+            ((Buffer) view).clear(); // not the covariant override Java 8 lacks
+            view.put(elements, from, n);
+            out.write(buf, 0, n * Byte.BYTES);
+            from += n;
+        }
+    }
+
+    /**
+     * Replaces the contents of this deque with elements read from the
+     * specified input, which must hold data written by {@link
+     * #writeTo(DataOutput)}.
+     *
+     * @param in the input to read from
+     * @throws IOException if an I/O error occurs, or the input does not
+     *         hold a deque in the compact serial form
+     */
+    public void readFrom(DataInput in) throws IOException {
+        readCompact(in, in.readInt());
+    }
+
+    private void readCompact(DataInput in, int format) throws IOException {
+        if (format != COMPACT_FORMAT)
+            throw new StreamCorruptedException("Unknown deque format " + format);
+        int size = in.readInt();
+        if (size < 0 || calculateSize(size) <= size)
+            throw new StreamCorruptedException("Illegal deque size " + size);
+
+        allocateElements(size);
+        head = 0;
+        tail = size;
+
+        byte[] buf = new byte[Math.min(size, SERIAL_BUFFER_SIZE / Byte.BYTES) * Byte.BYTES];
+        ByteBuffer view = ByteBuffer.wrap(buf).slice();
+        for (int i = 0; i < size; ) {
+            int n = Math.min(size - i, view.capacity());
+            in.readFully(buf, 0, n * Byte.BYTES);
+            ((Buffer) view).clear(); // not the covariant override Java 8 lacks
+            view.get(elements, i, n);
+            i += n;
+        }
+        recordSize();
+    }
+
+    /**
+     * Reads bytes from the specified channel straight into the free part of
+     * the ring and appends them to this deque.  The free part is at most two
+     * segments of the backing array, wrapped as {@link ByteBuffer}s and
+     * filled with a single scattering read if the channel supports one.
+     * Otherwise the second segment is read into only if the first one was
+     * filled, as a scattering read would.  Either way this method makes at
+     * most one read per segment, so on a blocking channel it returns once
+     * some bytes are available rather than waiting for the ring to fill.
+     *
+     * <p>At most as many bytes are read as fit without growing, which is
+     * never none: a deque with no free slot is grown first.  Call {@link
+     * #ensureCapacity} beforehand to read more at once.
+     *
+     * @param ch the channel to read from
+     * @return the number of bytes read, possibly zero, or {@code -1} if the
+     *         channel has reached end-of-stream
+     * @throws IOException if an I/O error occurs
+     */
+    public int read(ReadableByteChannel ch) throws IOException {
+        if (size() == elements.length - 1)
+            ensureCapacity(elements.length);
+        byte[] a = elements;
+        int h = head, t = tail, n = a.length;
+        int last = (h - 1) & (n - 1); // the slot that must stay free
+        int read;
+        if (t <= last) {
+            read = ch.read(ByteBuffer.wrap(a, t, last - t));
+        } else { // the free part wraps: [t, n) and [0, last)
+            ByteBuffer[] bufs = { ByteBuffer.wrap(a, t, n - t), ByteBuffer.wrap(a, 0, last) };
+            if (ch instanceof ScatteringByteChannel) {
+                long r = ((ScatteringByteChannel) ch).read(bufs);
+                read = (int) r;
+            } else {
+                read = ch.read(bufs[0]);
+                if (read == n - t && last > 0) {
+                    int r = ch.read(bufs[1]);
+                    if (r > 0)
+                        read += r;
+                }
+            }
+        }
+        if (read > 0) {
+            tail = (t + read) & (n - 1);
+            recordSize();
+        }
+        return read;
+    }
+
+    /**
+     * Writes bytes from the head of this deque straight from the backing
+     * array to the specified channel, and removes the ones written.  The
+     * elements are at most two segments of the array, wrapped as {@link
+     * ByteBuffer}s and written with a single gathering write if the channel
+     * supports one.
+     *
+     * @param ch the channel to write to
+     * @return the number of bytes written, possibly zero
+     * @throws IOException if an I/O error occurs
+     */
+    public int write(WritableByteChannel ch) throws IOException {
+        byte[] a = elements;
+        int h = head, t = tail, n = a.length;
+        int written;
+        if (h <= t) {
+            written = writeFully(ch, ByteBuffer.wrap(a, h, t - h));
+        } else { // the elements wrap: [h, n) and [0, t)
+            ByteBuffer[] bufs = { ByteBuffer.wrap(a, h, n - h), ByteBuffer.wrap(a, 0, t) };
+            if (ch instanceof GatheringByteChannel) {
+                written = (int) ((GatheringByteChannel) ch).write(bufs);
+            } else {
+                written = writeFully(ch, bufs[0]);
+                if (written == n - h)
+                    written += writeFully(ch, bufs[1]);
+            }
+        }
+        if (written > 0)
+            discardFirst(written);
+        return written;
+    }
+
+    /**
+     * Writes from the buffer until it is empty, or the channel takes no
+     * more right away.
+     */
+    private static int writeFully(WritableByteChannel ch, ByteBuffer buf) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            int w = ch.write(buf);
+            if (w <= 0)
+                break;
+            total += w;
+        }
+        return total;
+    }
+
+    /**
+     * Creates a <em><a href="Spliterator.html#binding">late-binding</a></em>
+     * and <em>fail-fast</em> {@link Spliterator} over the elements in this
+     * deque.
+     *
+     * <p>The {@code Spliterator} reports {@link Spliterator#SIZED},
+     * {@link Spliterator#SUBSIZED}, {@link Spliterator#ORDERED}, and
+     * {@link Spliterator#NONNULL}.  Overriding implementations should document
+     * the reporting of additional {@literal cha}racteristic values.
+     *
+     * @return a {@code Spliterator} over the elements in this deque
+     * @since 1.8
+     */
+    public ByteSpliterator spliterator() {
+        return new DeqSpliterator(this, -1, -1);
+    }
+
+    /**
+     * Returns a sequential {@code IntStream} with this deque as its
+     * source.  The stream is backed by {@link #spliterator()}, so no copy of
+     * the elements is made.
+     *
+     * @return a sequential {@code IntStream} over the elements in
+     *         this deque
+     */
+    public IntStream stream() {
+        return StreamSupport.intStream(new StreamSpliterator(new DeqSpliterator(this, -1, -1)), false);
+    }
+
+    /**
+     * Returns a possibly parallel {@code IntStream} with this deque
+     * as its source.  The stream is split at the midpoint of the ring, in the
+     * same way as {@link #spliterator()}.
+     *
+     * @return a possibly parallel {@code IntStream} over the
+     *         elements in this deque
+     */
+    public IntStream parallelStream() {
+        return StreamSupport.intStream(new StreamSpliterator(new DeqSpliterator(this, -1, -1)), true);
+    }
+
+    static final class DeqSpliterator implements ByteSpliterator {
+        private final ByteDeque deq;
+        private int fence;  // -1 until first use
+        private int index;  // current index, modified on traverse/split
+
+        /** Creates new spliterator covering the given array and range */
+        DeqSpliterator(ByteDeque deq, int origin, int fence) {
+            this.deq = deq;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        private int getFence() { // force initialization
+            int t;
+            if ((t = fence) < 0) {
+                t = fence = deq.tail;
+                index = deq.head;
+            }
+            return t;
+        }
+
+        public DeqSpliterator trySplit() {
+            int t = getFence(), h = index, n = deq.elements.length;
+            if (h != t && ((h + 1) & (n - 1)) != t) {
+                if (h > t)
+                    t += n;
+                int m = ((h + t) >>> 1) & (n - 1);
+                return new DeqSpliterator(deq, h, index = m);
+            }
+            return null;
+        }
+
+        public void forEachRemaining(Consumer<Byte> consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            byte[] a = deq.elements;
+            int m = a.length - 1, f = getFence(), i = index;
+            index = f;
+            while (i != f) {
+                 byte e = a[i];
+                i = (i + 1) & m;
+                consumer.accept(e);
+            }
+        }
+
+        public boolean tryAdvance(Consumer<Byte> consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            byte[] a = deq.elements;
+            int m = a.length - 1;
+            
+            getFence();
+            
+            int i = index;
+            
+            if (i != fence) {
+                 byte e = a[i];
+                index = (i + 1) & m;
+                consumer.accept(e);
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            byte[] a = deq.elements;
+            int f = getFence(), i = index;
+            index = f;
+            if (i > f) { // wrapped; walk [i, a.length) before [0, f)
+                for (int n = a.length; i < n; i++)
+                    consumer.accept(a[i]);
+                i = 0;
+            }
+            for (; i < f; i++)
+                consumer.accept(a[i]);
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            byte[] a = deq.elements;
+            int m = a.length - 1;
+            
+            getFence();
+            
+            int i = index;
+            
+            if (i != fence) {
+                 byte e = a[i];
+                index = (i + 1) & m;
+                consumer.accept(e);
+                return true;
+            }
+            return false;
+        }
+
+        public long estimateSize() {
+            int n = getFence() - index;
+            if (n < 0)
+                n += deq.elements.length;
+            return n;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED |
+                Spliterator.NONNULL | Spliterator.SUBSIZED;
+        }
+    }
+
+    /**
+     * Adapts a {@link DeqSpliterator} to the {@link Spliterator.OfInt}
+     * expected by {@code java.util.stream}.
+     */
+    static final class StreamSpliterator implements Spliterator.OfInt {
+        private final DeqSpliterator spliterator;
+
+        StreamSpliterator(DeqSpliterator spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        public StreamSpliterator trySplit() {
+            DeqSpliterator prefix = spliterator.trySplit();
+            return prefix == null ? null : new StreamSpliterator(prefix);
+        }
+
+        public boolean tryAdvance(IntConsumer consumer) {
+            return spliterator.tryAdvance(consumer);
+        }
+
+        public void forEachRemaining(IntConsumer consumer) {
+            spliterator.forEachRemaining(consumer);
+        }
+
+        public long estimateSize() {
+            return spliterator.estimateSize();
+        }
+
+        public int characteristics() {
+            return spliterator.characteristics();
+        }
+    }
+
+}
+
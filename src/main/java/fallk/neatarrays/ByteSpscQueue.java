@@ -0,0 +1,234 @@
+package fallk.neatarrays;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A bounded, lock-free queue of {@code byte}s for exactly one
+ * producer thread and one consumer thread.
+ *
+ * <p>Elements are kept in a power-of-two ring, indexed by masking as in
+ * {@link ByteDeque}.  The producer and the consumer each own one
+ * counter, kept on separate cache lines, and publish it to the other side
+ * with an ordered store instead of a full fence.  Each side also caches the
+ * last value it read of the other's counter, so that it only touches the
+ * shared cache line when the queue looks full (or empty).  The batched
+ * {@link #offer(byte[], int, int)} and {@link #drain drain} methods
+ * publish once per batch.
+ *
+ * <p>At most one thread may call the producer methods ({@code offer}) and at
+ * most one thread the consumer methods ({@code poll}, {@code peek} and
+ * {@code drain}) at any time; {@link #size}, {@link #isEmpty} and {@link
+ * #capacity} may be called by any thread.  {@code NULL_VALUE} can be
+ * queued, but is then indistinguishable from an empty queue in {@link
+ * #poll} and {@link #peek}.
+ */
+public class ByteSpscQueue extends SpscQueueFields
+{
+    // the primitive value that represents 'null'
+    protected static final byte NULL_VALUE = Byte.MIN_VALUE;
+
+    /**
+     * The largest capacity a queue can have.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final byte[] elements;
+
+    private final int mask;
+
+    /**
+     * Constructs an empty queue holding at least the specified number of
+     * elements.  The capacity is rounded up to a power of two.
+     *
+     * @param capacity the least number of elements the queue can hold
+     * @throws IllegalArgumentException if the capacity is less than one or
+     *         more than 2<sup>30</sup>
+     */
+    public ByteSpscQueue(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        int n = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        elements = new byte[n];
+        mask = n - 1;
+    }
+
+    // *** Producer methods ***
+
+    /**
+     * Inserts the specified element at the tail of this queue if there is
+     * room for it.  Call only from the producer thread.
+     *
+     * @param e the element to add
+     * @return {@code true} if the element was added, {@code false} if the
+     *         queue is full
+     */
+    public boolean offer(byte e) {
+        long p = producerIndex();
+        if (p >= producerLimit && p >= (producerLimit = consumerIndex() + elements.length))
+            return false;
+        elements[(int) p & mask] = e;
+        lazySetProducerIndex(p + 1);
+        return true;
+    }
+
+    /**
+     * Inserts as many of the specified elements at the tail of this queue
+     * as there is room for, and makes them visible to the consumer at once.
+     * Call only from the producer thread.
+     *
+     * @param src the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @return the number of elements added, from the start of the range
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public int offer(byte[] src, int off, int len) {
+        if (off < 0 || len < 0 || len > src.length - off)
+            throw new IndexOutOfBoundsException();
+        long p = producerIndex();
+        if (producerLimit - p < len)
+            producerLimit = consumerIndex() + elements.length;
+        int n = (int) Math.min(len, producerLimit - p);
+        if (n <= 0)
+            return 0;
+        int i = (int) p & mask;
+        int r = Math.min(n, elements.length - i);
+        System.arraycopy(src, off, elements, i, r);
+        System.arraycopy(src, off + r, elements, 0, n - r);
+        lazySetProducerIndex(p + n);
+        return n;
+    }
+
+    // *** Consumer methods ***
+
+    /**
+     * Retrieves and removes the head of this queue, or returns {@code
+     * NULL_VALUE} if this queue is empty.  Call only from the consumer
+     * thread.
+     *
+     * @return the head of this queue, or {@code NULL_VALUE} if this queue
+     *         is empty
+     */
+    public byte poll() {
+        long c = consumerIndex();
+        if (c >= consumerLimit && c >= (consumerLimit = producerIndex()))
+            return NULL_VALUE;
+        byte e = elements[(int) c & mask];
+        lazySetConsumerIndex(c + 1);
+        return e;
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of this queue, or returns
+     * {@code NULL_VALUE} if this queue is empty.  Call only from the
+     * consumer thread.
+     *
+     * @return the head of this queue, or {@code NULL_VALUE} if this queue
+     *         is empty
+     */
+    public byte peek() {
+        long c = consumerIndex();
+        if (c >= consumerLimit && c >= (consumerLimit = producerIndex()))
+            return NULL_VALUE;
+        return elements[(int) c & mask];
+    }
+
+    /**
+     * Removes up to {@code max} elements from the head of this queue into
+     * the specified array, handing their slots back to the producer at once.
+     * Call only from the consumer thread.
+     *
+     * @param dst the array to store the elements into
+     * @param off the index in {@code dst} of the first element
+     * @param max the largest number of elements to remove
+     * @return the number of elements removed
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public int drain(byte[] dst, int off, int max) {
+        if (off < 0 || max < 0 || max > dst.length - off)
+            throw new IndexOutOfBoundsException();
+        long c = consumerIndex();
+        if (consumerLimit - c < max)
+            consumerLimit = producerIndex();
+        int n = (int) Math.min(max, consumerLimit - c);
+        if (n <= 0)
+            return 0;
+        int i = (int) c & mask;
+        int r = Math.min(n, elements.length - i);
+        System.arraycopy(elements, i, dst, off, r);
+        System.arraycopy(elements, 0, dst, off + r, n - r);
+        lazySetConsumerIndex(c + n);
+        return n;
+    }
+
+    /**
+     * Removes up to {@code limit} elements from the head of this queue and
+     * passes them to the specified action, handing their slots back to the
+     * producer once the action has seen them all.  Call only from the
+     * consumer thread.
+     *
+     * @param action the action to perform on each element
+     * @param limit the largest number of elements to remove
+     * @return the number of elements removed
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public int drain(IntConsumer action, int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Negative limit: " + limit);
+        long c = consumerIndex();
+        if (consumerLimit - c < limit)
+            consumerLimit = producerIndex();
+        int n = (int) Math.min(limit, consumerLimit - c);
+        if (n <= 0)
+            return 0;
+        final byte[] es = elements;
+        final int m = mask;
+        long i = c;
+        try {
+            for (long end = c + n; i < end; i++)
+                action.accept(es[(int) i & m]);
+        } finally {
+            // elements already passed on must not be seen again
+            lazySetConsumerIndex(i == c + n ? i : i + 1);
+        }
+        return n;
+    }
+
+    // *** Methods for any thread ***
+
+    /**
+     * Returns the number of elements in this queue.  Elements may be added
+     * or removed concurrently, so the result is only a snapshot.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        long after = consumerIndex();
+        long before, p;
+        do { // retry until the consumer index holds still across the read
+            before = after;
+            p = producerIndex();
+            after = consumerIndex();
+        } while (before != after);
+        return (int) Math.max(0, Math.min(p - after, elements.length));
+    }
+
+    /**
+     * Returns {@code true} if this queue contains no elements.  Elements may
+     * be added or removed concurrently, so the result is only a snapshot.
+     *
+     * @return {@code true} if this queue contains no elements
+     */
+    public boolean isEmpty() {
+        return consumerIndex() >= producerIndex();
+    }
+
+    /**
+     * Returns the number of elements this queue can hold.
+     *
+     * @return the number of elements this queue can hold
+     */
+    public int capacity() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,406 @@
+package fallk.neatarrays;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe queue of {@code char}s for any number of
+ * producers and consumers, with the blocking operations of {@link
+ * java.util.concurrent.BlockingQueue}.
+ *
+ * <p>Elements are kept in a power-of-two ring, indexed by masking as in
+ * {@link CharDeque}.  Each slot has a sequence number that tells
+ * producers when it is free and consumers when it is filled, so that {@link
+ * #offer(char)} and {@link #poll()} claim a slot with a single
+ * compare-and-set and never lock.  The blocking methods try the same path
+ * first, and only wait on a lock and condition when the queue is full (or
+ * empty); the other side signals them only when it sees that someone is
+ * waiting.
+ *
+ * <p>{@code NULL_VALUE} can be queued, but is then indistinguishable from
+ * an empty queue in {@link #poll()}, {@link #peek()} and the timed {@link
+ * #poll(long, TimeUnit)}.
+ */
+public class CharBlockingQueue
+{
+    // the primitive value that represents 'null'
+    protected static final char NULL_VALUE = Character.MIN_VALUE;
+
+    /**
+     * The largest capacity a queue can have.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final char[] elements;
+
+    /**
+     * The sequence number of each slot.  Slot {@code i} is free for the
+     * producer holding ticket {@code t} when its sequence is {@code t}, and
+     * filled for the consumer holding ticket {@code t} when it is {@code
+     * t + 1}.
+     */
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    /** The next producer ticket. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The next consumer ticket. */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Guards the conditions below; not taken by the non-blocking methods. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /** The number of consumers waiting on {@code notEmpty}. */
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+
+    /** The number of producers waiting on {@code notFull}. */
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    /**
+     * Constructs an empty queue holding at least the specified number of
+     * elements.  The capacity is rounded up to a power of two.
+     *
+     * @param capacity the least number of elements the queue can hold
+     * @throws IllegalArgumentException if the capacity is less than one or
+     *         more than 2<sup>30</sup>
+     */
+    public CharBlockingQueue(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        int n = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        elements = new char[n];
+        sequences = new AtomicLongArray(n);
+        for (int i = 0; i < n; i++)
+            sequences.lazySet(i, i);
+        mask = n - 1;
+    }
+
+    // ******  Slot claiming ******
+
+    /**
+     * Claims a free slot for a producer.
+     *
+     * @return the ticket of the claimed slot, or -1 if the queue is full
+     */
+    private long claimTail() {
+        for (;;) {
+            long t = tail.get();
+            long d = sequences.get((int) t & mask) - t;
+            if (d == 0) {
+                if (tail.compareAndSet(t, t + 1))
+                    return t;
+            } else if (d < 0) {
+                return -1;
+            }
+            // else another producer got there first; retry
+        }
+    }
+
+    /**
+     * Claims a filled slot for a consumer.
+     *
+     * @return the ticket of the claimed slot, or -1 if the queue is empty
+     */
+    private long claimHead() {
+        for (;;) {
+            long h = head.get();
+            long d = sequences.get((int) h & mask) - (h + 1);
+            if (d == 0) {
+                if (head.compareAndSet(h, h + 1))
+                    return h;
+            } else if (d < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Fills a claimed slot and hands it to the consumers.  The sequence is
+     * written with a volatile store, which orders it before the read of
+     * {@code waitingConsumers}; a consumer about to wait re-checks the
+     * queue after announcing itself, so one of the two always sees the
+     * other.
+     */
+    private void fill(long t, char e) {
+        int i = (int) t & mask;
+        elements[i] = e;
+        sequences.set(i, t + 1);
+        if (waitingConsumers.get() > 0)
+            signal(notEmpty);
+    }
+
+    /**
+     * Empties a claimed slot and hands it back to the producers.
+     */
+    private char empty(long h) {
+        int i = (int) h & mask;
+        char e = elements[i];
+        sequences.set(i, h + mask + 1);
+        if (waitingProducers.get() > 0)
+            signal(notFull);
+        return e;
+    }
+
+    private void signal(Condition c) {
+        lock.lock();
+        try {
+            c.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // *** Non-blocking methods ***
+
+    /**
+     * Inserts the specified element at the tail of this queue if there is
+     * room for it.
+     *
+     * @param e the element to add
+     * @return {@code true} if the element was added, {@code false} if the
+     *         queue is full
+     */
+    public boolean offer(char e) {
+        long t = claimTail();
+        if (t < 0)
+            return false;
+        fill(t, e);
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, or returns {@code
+     * NULL_VALUE} if this queue is empty.
+     *
+     * @return the head of this queue, or {@code NULL_VALUE} if this queue
+     *         is empty
+     */
+    public char poll() {
+        long h = claimHead();
+        return h < 0 ? NULL_VALUE : empty(h);
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of this queue, or returns
+     * {@code NULL_VALUE} if this queue is empty.  With other consumers
+     * around, the element may be gone by the time this method returns.
+     *
+     * @return the head of this queue, or {@code NULL_VALUE} if this queue
+     *         is empty
+     */
+    public char peek() {
+        for (;;) {
+            long h = head.get();
+            int i = (int) h & mask;
+            long d = sequences.get(i) - (h + 1);
+            if (d < 0)
+                return NULL_VALUE;
+            char e = elements[i];
+            // only valid if the slot still held ticket h while it was read
+            if (d == 0 && sequences.get(i) == h + 1)
+                return e;
+        }
+    }
+
+    // *** Blocking methods ***
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting if
+     * necessary for space to become available.
+     *
+     * @param e the element to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(char e) throws InterruptedException {
+        long t = claimTail();
+        if (t < 0) {
+            lock.lockInterruptibly();
+            waitingProducers.incrementAndGet();
+            try {
+                while ((t = claimTail()) < 0)
+                    notFull.await();
+            } finally {
+                waitingProducers.decrementAndGet();
+                lock.unlock();
+            }
+        }
+        fill(t, e);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting up
+     * to the specified wait time if necessary for space to become available.
+     *
+     * @param e the element to add
+     * @param timeout how long to wait before giving up, in units of
+     *        {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the
+     *        {@code timeout} parameter
+     * @return {@code true} if successful, or {@code false} if
+     *         the specified waiting time elapses before space is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean offer(char e, long timeout, TimeUnit unit) throws InterruptedException {
+        long t = claimTail();
+        if (t < 0) {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            waitingProducers.incrementAndGet();
+            try {
+                while ((t = claimTail()) < 0) {
+                    if (nanos <= 0)
+                        return false;
+                    nanos = notFull.awaitNanos(nanos);
+                }
+            } finally {
+                waitingProducers.decrementAndGet();
+                lock.unlock();
+            }
+        }
+        fill(t, e);
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting if necessary
+     * until an element becomes available.
+     *
+     * @return the head of this queue
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public char take() throws InterruptedException {
+        long h = claimHead();
+        if (h < 0) {
+            lock.lockInterruptibly();
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((h = claimHead()) < 0)
+                    notEmpty.await();
+            } finally {
+                waitingConsumers.decrementAndGet();
+                lock.unlock();
+            }
+        }
+        return empty(h);
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, waiting up to the
+     * specified wait time if necessary for an element to become available.
+     *
+     * @param timeout how long to wait before giving up, in units of
+     *        {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the
+     *        {@code timeout} parameter
+     * @return the head of this queue, or {@code NULL_VALUE} if the
+     *         specified waiting time elapses before an element is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public char poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long h = claimHead();
+        if (h < 0) {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            waitingConsumers.incrementAndGet();
+            try {
+                while ((h = claimHead()) < 0) {
+                    if (nanos <= 0)
+                        return NULL_VALUE;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+            } finally {
+                waitingConsumers.decrementAndGet();
+                lock.unlock();
+            }
+        }
+        return empty(h);
+    }
+
+    /**
+     * Removes all available elements from this queue and adds them to the
+     * end of the given deque.
+     *
+     * @param c the deque to transfer elements into
+     * @return the number of elements transferred
+     */
+    public int drainTo(CharDeque c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the given number of available elements from this
+     * queue and adds them to the end of the given deque.
+     *
+     * @param c the deque to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     */
+    public int drainTo(CharDeque c, int maxElements) {
+        int n = 0;
+        long h;
+        while (n < maxElements && (h = claimHead()) >= 0) {
+            c.addLast(empty(h));
+            n++;
+        }
+        return n;
+    }
+
+    // *** Size methods ***
+
+    /**
+     * Returns the number of elements in this queue.  Elements may be added
+     * or removed concurrently, so the result is only a snapshot.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        long after = head.get();
+        long before, t;
+        do { // retry until the head holds still across the read
+            before = after;
+            t = tail.get();
+            after = head.get();
+        } while (before != after);
+        return (int) Math.max(0, Math.min(t - after, elements.length));
+    }
+
+    /**
+     * Returns {@code true} if this queue contains no elements.  Elements may
+     * be added or removed concurrently, so the result is only a snapshot.
+     *
+     * @return {@code true} if this queue contains no elements
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can accept
+     * without blocking.  Elements may be added or removed concurrently, so
+     * the result is only a snapshot.
+     *
+     * @return the remaining capacity
+     */
+    public int remainingCapacity() {
+        return elements.length - size();
+    }
+
+    /**
+     * Returns the number of elements this queue can hold.
+     *
+     * @return the number of elements this queue can hold
+     */
+    public int capacity() {
+        return elements.length;
+    }
+}
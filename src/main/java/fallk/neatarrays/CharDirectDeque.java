@@ -0,0 +1,826 @@
+package fallk.neatarrays;
+
+import java.io.Closeable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link CharDeque} whose elements live outside the Java heap, in
+ * direct {@link ByteBuffer}s.  Very large deques then neither weigh on the
+ * old generation nor get copied around by full collections, and growing one
+ * never needs a contiguous multi-gigabyte array.
+ *
+ * <p>The deque uses the same ring layout as {@code CharDeque}: a
+ * power-of-two capacity, head and tail indices masked into it, and a
+ * capacity that doubles when the ring fills up.  The ring is split into
+ * chunks of at most 1 GiB each, since a single buffer cannot address more
+ * than 2 GiB.  Slots that do not hold elements are not kept at {@code
+ * NULL_VALUE}, so {@code NULL_VALUE} can be stored like any other value.
+ *
+ * <p>The native memory is released by {@link #close()}, rather than waiting
+ * for the garbage collector.  Every method of a closed deque other than
+ * {@link #close()} and {@link #isOpen()} throws {@link
+ * IllegalStateException}.  Like {@code CharDeque},
+ * this class is not thread-safe.
+ *
+ * <p>This class has the queue, stack, bulk array and indexed methods of
+ * {@code CharDeque}.  It leaves out the ones that box, remove
+ * from the middle, or copy the whole deque onto the heap again.
+ */
+public class CharDirectDeque implements Closeable
+{
+    // the primitive value that represents 'null'
+    protected static final char NULL_VALUE = Character.MIN_VALUE;
+
+    /**
+     * The minimum capacity that we'll use for a newly created deque.
+     * Must be a power of 2.
+     */
+    private static final int MIN_INITIAL_CAPACITY = 8;
+
+    /**
+     * The largest capacity a deque can have, as for {@code CharDeque}.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * log2 of the number of elements in a full chunk, which is 1 GiB.
+     */
+    private static final int CHUNK_SHIFT = 30 - Integer.numberOfTrailingZeros(Character.BYTES);
+
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    /**
+     * The direct buffers holding the elements, kept so they can be freed;
+     * null once the deque is closed.
+     */
+    private ByteBuffer[] blocks;
+
+    /**
+     * Typed views of {@code blocks}.  Element {@code i} of the ring is
+     * element {@code i & CHUNK_MASK} of chunk {@code i >>> CHUNK_SHIFT}.
+     * Null once the deque is closed.
+     */
+    private CharBuffer[] chunks;
+
+    /**
+     * The number of slots in the ring, always a power of two.
+     */
+    private int capacity;
+
+    /**
+     * The index of the element at the head of the deque; or an arbitrary
+     * number equal to tail if the deque is empty.
+     */
+    private int head;
+
+    /**
+     * The index at which the next element would be added to the tail of
+     * the deque.
+     */
+    private int tail;
+
+    /**
+     * Constructs an empty direct deque with an initial capacity sufficient
+     * to hold 16 elements.
+     */
+    public CharDirectDeque() {
+        allocate(16);
+    }
+
+    /**
+     * Constructs an empty direct deque with an initial capacity sufficient
+     * to hold the specified number of elements.
+     *
+     * @param numElements  lower bound on initial capacity of the deque
+     */
+    public CharDirectDeque(int numElements) {
+        int initialCapacity = MIN_INITIAL_CAPACITY;
+        // Find the best power of two to hold elements.
+        // Tests "<=" because arrays aren't kept full.
+        if (numElements >= initialCapacity) {
+            initialCapacity = Integer.highestOneBit(numElements) << 1;
+            if (initialCapacity < 0 || initialCapacity > MAX_CAPACITY)
+                initialCapacity = MAX_CAPACITY;
+        }
+        allocate(initialCapacity);
+    }
+
+    /**
+     * Inserts the elements of the specified array at the end of this deque,
+     * in array order.  The deque is grown at most once, straight to the
+     * capacity needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllLast(char[] a) {
+        addAllLast(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the end of this deque, in array order.  The deque is
+     * grown at most once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllLast(char[] a, int off, int len) {
+        checkOpen();
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int t = tail;
+        copyIn(a, off, t, len);
+        tail = (t + len) & (capacity - 1);
+    }
+
+    /**
+     * Inserts the elements of the specified array at the front of this
+     * deque.  The array order is kept, so {@code a[0]} becomes the first
+     * element.  The deque is grown at most once, straight to the capacity
+     * needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllFirst(char[] a) {
+        addAllFirst(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the front of this deque.  The array order is kept, so
+     * {@code a[off]} becomes the first element.  The deque is grown at most
+     * once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllFirst(char[] a, int off, int len) {
+        checkOpen();
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int h = (head - len) & (capacity - 1);
+        copyIn(a, off, h, len);
+        head = h;
+    }
+
+    // ******  Memory allocation and resizing utilities ******
+
+    /**
+     * Allocates the chunks for a ring of the given capacity and makes them
+     * current.  The previous chunks, if any, must be freed by the caller.
+     */
+    private void allocate(int newCapacity) {
+        int chunkSize = Math.min(newCapacity, 1 << CHUNK_SHIFT);
+        int n = newCapacity / chunkSize;
+        ByteBuffer[] b = new ByteBuffer[n];
+        CharBuffer[] c = new CharBuffer[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                b[i] = ByteBuffer.allocateDirect(chunkSize * Character.BYTES)
+                        .order(ByteOrder.nativeOrder());
+                c[i] = b[i].asCharBuffer();
+            }
+        } catch (OutOfMemoryError e) {
+            free(b);
+            throw e;
+        }
+        blocks = b;
+        chunks = c;
+        capacity = newCapacity;
+    }
+
+    private static void free(ByteBuffer[] b) {
+        for (ByteBuffer buffer : b) {
+            if (buffer != null)
+                DirectMemory.free(buffer);
+        }
+    }
+
+    /**
+     * Doubles the capacity of this deque.  Call only when full, i.e.,
+     * when head and tail have wrapped around to become equal.
+     */
+    private void doubleCapacity() {
+        assert head == tail;
+        int p = head;
+        int n = capacity;
+        int r = n - p; // number of elements to the right of p
+        int newCapacity = n << 1;
+        if (newCapacity < 0 || newCapacity > MAX_CAPACITY)
+            throw new IllegalStateException("Sorry, deque too big");
+        ByteBuffer[] oldBlocks = blocks;
+        CharBuffer[] old = chunks;
+        allocate(newCapacity);
+        copy(old, p, chunks, 0, r);
+        copy(old, 0, chunks, r, p);
+        free(oldBlocks);
+        head = 0;
+        tail = n;
+    }
+
+    /**
+     * Copies {@code len} elements between two sets of chunks, one run of
+     * bulk transfers at a time.
+     */
+    private static void copy(CharBuffer[] src, int srcPos,
+                             CharBuffer[] dst, int dstPos, int len) {
+        while (len > 0) {
+            CharBuffer s = src[srcPos >>> CHUNK_SHIFT].duplicate();
+            CharBuffer d = dst[dstPos >>> CHUNK_SHIFT].duplicate();
+            int so = srcPos & CHUNK_MASK;
+            int dO = dstPos & CHUNK_MASK;
+            int n = Math.min(len, Math.min(s.capacity() - so, d.capacity() - dO));
+            // go through Buffer, whose methods Java 8 has
+            ((Buffer) s).limit(so + n);
+            ((Buffer) s).position(so);
+            ((Buffer) d).position(dO);
+            d.put(s);
+            srcPos += n;
+            dstPos += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Moves the elements into new chunks of the given capacity, which must
+     * be a power of two larger than the current size.  The ring is
+     * linearised by the same copy, so the first element ends up at index 0.
+     */
+    private void reallocate(int newCapacity) {
+        CharBuffer[] old = chunks();
+        ByteBuffer[] oldBlocks = blocks;
+        int h = head;
+        int size = size();
+        int r = Math.min(size, capacity - h); // elements to the right of h
+        allocate(newCapacity);
+        copy(old, h, chunks, 0, r);
+        copy(old, 0, chunks, r, size - r);
+        free(oldBlocks);
+        head = 0;
+        tail = size;
+    }
+
+    /**
+     * Grows the ring, at most once, so that {@code n} more elements can be
+     * added without any further resizing.
+     */
+    private void reserve(int n) {
+        int required = size() + n;
+        if (required < 0)
+            throw new IllegalStateException("Sorry, deque too big");
+        ensureCapacity(required);
+    }
+
+    /**
+     * Copies {@code len} elements of {@code src} into the ring starting at
+     * index {@code dst}, wrapping around the end of the ring if needed.
+     * The caller must already have made room for them.
+     */
+    private void copyIn(char[] src, int srcPos, int dst, int len) {
+        int r = Math.min(len, capacity - dst); // slots to the right of dst
+        put(dst, src, srcPos, r);
+        put(0, src, srcPos + r, len - r);
+    }
+
+    /**
+     * Copies {@code len} elements of the given array into slots of the
+     * ring, which must not wrap, with bulk transfers.
+     */
+    private void put(int dstPos, char[] src, int srcPos, int len) {
+        CharBuffer[] c = chunks();
+        while (len > 0) {
+            CharBuffer d = c[dstPos >>> CHUNK_SHIFT].duplicate();
+            int dO = dstPos & CHUNK_MASK;
+            int n = Math.min(len, d.capacity() - dO);
+            ((Buffer) d).position(dO);
+            d.put(src, srcPos, n);
+            srcPos += n;
+            dstPos += n;
+            len -= n;
+        }
+    }
+
+    private CharBuffer[] chunks() {
+        checkOpen();
+        return chunks;
+    }
+
+    private void checkOpen() {
+        if (blocks == null)
+            throw new IllegalStateException("Deque is closed");
+    }
+
+    private char load(int i) {
+        return chunks()[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+    }
+
+    private void store(int i, char e) {
+        chunks()[i >>> CHUNK_SHIFT].put(i & CHUNK_MASK, e);
+    }
+
+    /**
+     * Releases the native memory held by this deque.  Closing a deque that
+     * is already closed has no effect.
+     */
+    public void close() {
+        ByteBuffer[] b = blocks;
+        if (b != null) {
+            blocks = null;
+            chunks = null;
+            head = tail = 0;
+            free(b);
+        }
+    }
+
+    /**
+     * Returns {@code true} if this deque has not been closed.
+     *
+     * @return {@code true} if this deque has not been closed
+     */
+    public boolean isOpen() {
+        return blocks != null;
+    }
+
+    // The main insertion and extraction methods are addFirst,
+    // addLast, pollFirst, pollLast. The other methods are defined in
+    // terms of these.
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     */
+    public void addFirst(char e) {
+        int h = (head - 1) & (capacity - 1);
+        store(h, e); // before head moves, in case the deque is closed
+        head = h;
+        if (h == tail)
+            doubleCapacity();
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * <p>This method is equivalent to {@link #add}.
+     *
+     * @param e the element to add
+     */
+    public void addLast(char e) {
+        store(tail, e);
+        if ( (tail = (tail + 1) & (capacity - 1)) == head)
+            doubleCapacity();
+    }
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offerFirst(char e) {
+        addFirst(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offerLast(char e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public char removeFirst() {
+        checkOpen();
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollFirst();
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public char removeLast() {
+        checkOpen();
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollLast();
+    }
+
+    public char pollFirst() {
+        checkOpen();
+        int h = head;
+        if (h == tail) // isEmpty()
+            return NULL_VALUE;
+        char result = load(h);
+        head = (h + 1) & (capacity - 1);
+        return result;
+    }
+
+    public char pollLast() {
+        checkOpen();
+        if (head == tail) // isEmpty()
+            return NULL_VALUE;
+        int t = (tail - 1) & (capacity - 1);
+        char result = load(t);
+        tail = t;
+        return result;
+    }
+
+    /**
+     * Removes up to {@code max} elements from the head of this deque into
+     * the specified array, in order, with bulk transfers.
+     *
+     * @param dst the array to store the elements into
+     * @param off the index in {@code dst} of the first element
+     * @param max the maximum number of elements to remove
+     * @return the number of elements removed
+     * @throws IndexOutOfBoundsException if {@code off} or {@code max} is
+     *         negative, or {@code off + max} is greater than {@code dst.length}
+     */
+    public int pollFirst(char[] dst, int off, int max) {
+        checkOpen();
+        if (off < 0 || max < 0 || max > dst.length - off)
+            throw new IndexOutOfBoundsException();
+        int n = Math.min(max, size());
+        if (n == 0)
+            return 0;
+        int h = head;
+        int r = Math.min(n, capacity - h); // elements to the right of h
+        get(h, dst, off, r);
+        get(0, dst, off + r, n - r);
+        head = (h + n) & (capacity - 1);
+        return n;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public char getFirst() {
+        checkOpen();
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return load(head);
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public char getLast() {
+        checkOpen();
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return load((tail - 1) & (capacity - 1));
+    }
+
+    public char peekFirst() {
+        checkOpen();
+        return head == tail ? NULL_VALUE : load(head);
+    }
+
+    public char peekLast() {
+        checkOpen();
+        return head == tail ? NULL_VALUE : load((tail - 1) & (capacity - 1));
+    }
+
+    // *** Queue methods ***
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean add(char e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offer(char e) {
+        return offerLast(e);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public char remove() {
+        return removeFirst();
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque,
+     * or returns {@code NULL_VALUE} if this deque is empty.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code NULL_VALUE} if this deque is empty
+     */
+    public char poll() {
+        return pollFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public char element() {
+        return getFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque, or returns {@code NULL_VALUE} if this deque is empty.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code NULL_VALUE} if this deque is empty
+     */
+    public char peek() {
+        return peekFirst();
+    }
+
+    // *** Stack methods ***
+
+    /**
+     * Pushes an element onto the stack represented by this deque.
+     *
+     * @param e the element to push
+     */
+    public void push(char e) {
+        addFirst(e);
+    }
+
+    /**
+     * Pops an element from the stack represented by this deque.
+     *
+     * @return the element at the front of this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public char pop() {
+        return removeFirst();
+    }
+
+    // *** Collection Methods ***
+
+    /**
+     * Returns the element at the specified position in this deque, counting
+     * from the head.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this deque
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public char get(int index) {
+        checkIndex(index);
+        return load((head + index) & (capacity - 1));
+    }
+
+    /**
+     * Replaces the element at the specified position in this deque, counting
+     * from the head, with the specified element.
+     *
+     * @param index index of the element to replace
+     * @param e element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public char set(int index, char e) {
+        checkIndex(index);
+        int i = (head + index) & (capacity - 1);
+        char result = load(i);
+        store(i, e);
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        int size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque
+     */
+    public int size() {
+        checkOpen();
+        return (tail - head) & (capacity - 1);
+    }
+
+    /**
+     * Returns the number of elements this deque can contain without increasing in size.
+     *
+     * @return the number of elements this deque can contain without increasing in size.
+     */
+    public int space() {
+        checkOpen();
+        return capacity;
+    }
+
+    /**
+     * Increases the capacity of this deque, if necessary, so that it can
+     * hold at least {@code minCapacity} elements without growing again.
+     * The chunks are reallocated at most once, straight to the required
+     * power of two, and the ring is linearised by the same copy.
+     *
+     * @param minCapacity the desired minimum capacity
+     * @throws IllegalStateException if {@code minCapacity} is more than the
+     *         largest deque can hold
+     */
+    public void ensureCapacity(int minCapacity) {
+        checkOpen();
+        if (minCapacity < capacity)
+            return;
+        if (minCapacity >= MAX_CAPACITY)
+            throw new IllegalStateException("Sorry, deque too big");
+        reallocate(Integer.highestOneBit(minCapacity) << 1);
+    }
+
+    /**
+     * Returns {@code true} if this deque contains no elements.
+     *
+     * @return {@code true} if this deque contains no elements
+     */
+    public boolean isEmpty() {
+        checkOpen();
+        return head == tail;
+    }
+
+    /**
+     * Returns {@code true} if this deque contains the specified element.
+     *
+     * @param o char to be checked for containment in this deque
+     * @return {@code true} if this deque contains the specified element
+     */
+    public boolean contains(char o) {
+        checkOpen();
+        int mask = capacity - 1;
+        for (int i = head; i != tail; i = (i + 1) & mask) {
+            if (load(i) == o)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the element, or -1
+     */
+    public int indexOf(char o) {
+        checkOpen();
+        int mask = capacity - 1;
+        int h = head;
+        for (int i = h; i != tail; i = (i + 1) & mask) {
+            if (load(i) == o)
+                return (i - h) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the element, or -1
+     */
+    public int lastIndexOf(char o) {
+        checkOpen();
+        int mask = capacity - 1;
+        int h = head;
+        for (int i = tail; i != h; ) {
+            i = (i - 1) & mask;
+            if (load(i) == o)
+                return (i - h) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes all of the elements from this deque.  The capacity, and the
+     * memory behind it, is kept.
+     */
+    public void clear() {
+        checkOpen();
+        head = tail = 0;
+    }
+
+    /**
+     * Returns an on-heap array containing all of the elements in this deque
+     * in proper sequence (from first to last element).
+     *
+     * @return an array containing all of the elements in this deque
+     */
+    public char[] toArray() {
+        char[] a = new char[size()];
+        int h = head;
+        int t = tail;
+        if (h <= t) {
+            get(h, a, 0, t - h);
+        } else {
+            int r = capacity - h;
+            get(h, a, 0, r);
+            get(0, a, r, t);
+        }
+        return a;
+    }
+
+    /**
+     * Copies {@code len} slots of the ring, which must not wrap, into the
+     * given array with bulk transfers.
+     */
+    private void get(int srcPos, char[] dst, int dstPos, int len) {
+        CharBuffer[] c = chunks();
+        while (len > 0) {
+            CharBuffer s = c[srcPos >>> CHUNK_SHIFT].duplicate();
+            int so = srcPos & CHUNK_MASK;
+            int n = Math.min(len, s.capacity() - so);
+            ((Buffer) s).position(so);
+            s.get(dst, dstPos, n);
+            srcPos += n;
+            dstPos += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque.  The elements
+     * will be ordered from first (head) to last (tail).
+     *
+     * @return an iterator over the elements in this deque
+     */
+    public CharIterator iterator() {
+        checkOpen();
+        return new DeqIterator();
+    }
+
+    private class DeqIterator implements CharIterator {
+        /**
+         * Index of element to be returned by subsequent call to next.
+         */
+        private int cursor = head;
+
+        /**
+         * Tail recorded at construction, to stop iterator and also to
+         * check for comodification.
+         */
+        private final int fence = tail;
+
+        public boolean hasNext() {
+            return cursor != fence;
+        }
+
+        public char next() {
+            if (cursor == fence)
+                throw new NoSuchElementException();
+            // This check doesn't catch all possible comodifications,
+            // but does catch the ones that corrupt traversal
+            if (tail != fence)
+                throw new ConcurrentModificationException();
+            char result = load(cursor);
+            cursor = (cursor + 1) & (capacity - 1);
+            return result;
+        }
+    }
+}
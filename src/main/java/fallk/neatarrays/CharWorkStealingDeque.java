@@ -0,0 +1,197 @@
+package fallk.neatarrays;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A work-stealing deque of {@code char}s, after Chase and Lev,
+ * "Dynamic Circular Work-Stealing Deque" (SPAA 2005).
+ *
+ * <p>One thread, the owner, uses the deque as a stack: it {@link #push
+ * pushes} and {@link #pop pops} at the bottom without locking, and pays for
+ * a compare-and-set only when it races a thief for the last element.  Any
+ * number of other threads may {@link #steal} from the top, each steal
+ * claiming its element with a compare-and-set.  The elements are kept in a
+ * power-of-two ring, indexed by masking as in {@link CharDeque},
+ * that the owner doubles when it fills up.
+ *
+ * <p>{@link #pop} and {@link #steal} return {@code NULL_VALUE} when they
+ * find nothing to take, and {@code steal} also when another thread took the
+ * element first, so {@code NULL_VALUE} should not be pushed.
+ */
+public class CharWorkStealingDeque
+{
+    // the primitive value that represents 'null'
+    protected static final char NULL_VALUE = Character.MIN_VALUE;
+
+    /**
+     * The minimum capacity that we'll use for a newly created deque.
+     * Must be a power of 2.
+     */
+    private static final int MIN_INITIAL_CAPACITY = 8;
+
+    /**
+     * The largest capacity a deque can have.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private static final AtomicLongFieldUpdater<CharWorkStealingDeque> TOP =
+            AtomicLongFieldUpdater.newUpdater(CharWorkStealingDeque.class, "top");
+
+    /**
+     * The index of the next element to steal.  Only ever increases, and only
+     * by compare-and-set.
+     */
+    private volatile long top;
+
+    /**
+     * The index the owner pushes the next element at.  Written by the owner
+     * only.
+     */
+    private volatile long bottom;
+
+    /**
+     * The ring; element {@code i} is at {@code i & (length - 1)}.  Replaced
+     * by the owner only, and an old ring keeps the elements it held, so a
+     * thief still reading one sees the right value.
+     */
+    private volatile char[] elements;
+
+    /**
+     * Constructs an empty deque with an initial capacity sufficient to
+     * hold 16 elements.
+     */
+    public CharWorkStealingDeque() {
+        elements = new char[16];
+    }
+
+    /**
+     * Constructs an empty deque with an initial capacity sufficient to
+     * hold the specified number of elements.
+     *
+     * @param numElements  lower bound on initial capacity of the deque
+     */
+    public CharWorkStealingDeque(int numElements) {
+        int initialCapacity = MIN_INITIAL_CAPACITY;
+        if (numElements > initialCapacity) {
+            initialCapacity = Integer.highestOneBit(numElements - 1) << 1;
+            if (initialCapacity < 0 || initialCapacity > MAX_CAPACITY)
+                initialCapacity = MAX_CAPACITY;
+        }
+        elements = new char[initialCapacity];
+    }
+
+    /**
+     * Doubles the capacity of the ring, which holds the elements {@code
+     * [t, b)} and is full.
+     */
+    private char[] grow(char[] a, long b, long t) {
+        int n = a.length;
+        if (n >= MAX_CAPACITY)
+            throw new IllegalStateException("Sorry, deque too big");
+        char[] r = new char[n << 1];
+        int oldMask = n - 1, newMask = (n << 1) - 1;
+        for (long i = t; i < b; i++)
+            r[(int) i & newMask] = a[(int) i & oldMask];
+        elements = r;
+        return r;
+    }
+
+    // *** Owner methods ***
+
+    /**
+     * Pushes an element onto the bottom of this deque.  Call only from the
+     * owner thread.
+     *
+     * @param e the element to push
+     */
+    public void push(char e) {
+        long b = bottom;
+        long t = top;
+        char[] a = elements;
+        if (b - t >= a.length)
+            a = grow(a, b, t);
+        a[(int) b & (a.length - 1)] = e;
+        bottom = b + 1; // publishes the element to thieves
+    }
+
+    /**
+     * Pops the element at the bottom of this deque, that is the one most
+     * recently pushed, or returns {@code NULL_VALUE} if the deque is empty.
+     * Call only from the owner thread.
+     *
+     * @return the element at the bottom of this deque, or {@code NULL_VALUE}
+     *         if this deque is empty
+     */
+    public char pop() {
+        long b = bottom - 1;
+        char[] a = elements;
+        // claim the element before looking at top; both are volatile, so
+        // a thief reading top after this sees the new bottom
+        bottom = b;
+        long t = top;
+        if (t > b) { // empty
+            bottom = t;
+            return NULL_VALUE;
+        }
+        char e = a[(int) b & (a.length - 1)];
+        if (t == b) { // the last element, which a thief may be after too
+            if (!TOP.compareAndSet(this, t, t + 1))
+                e = NULL_VALUE;
+            bottom = t + 1;
+        }
+        return e;
+    }
+
+    // *** Thief methods ***
+
+    /**
+     * Steals the element at the top of this deque, that is the one pushed
+     * least recently.  Returns {@code NULL_VALUE} if the deque is empty, or
+     * if another thread took the element first.  May be called from any
+     * thread.
+     *
+     * @return the element at the top of this deque, or {@code NULL_VALUE}
+     */
+    public char steal() {
+        long t = top;
+        long b = bottom;
+        if (t >= b)
+            return NULL_VALUE;
+        char[] a = elements;
+        char e = a[(int) t & (a.length - 1)];
+        return TOP.compareAndSet(this, t, t + 1) ? e : NULL_VALUE;
+    }
+
+    // *** Methods for any thread ***
+
+    /**
+     * Returns the number of elements in this deque.  Elements may be pushed
+     * or taken concurrently, so the result is only a snapshot.
+     *
+     * @return the number of elements in this deque
+     */
+    public int size() {
+        long t = top;
+        long n = bottom - t;
+        return n > 0 ? (int) n : 0;
+    }
+
+    /**
+     * Returns {@code true} if this deque contains no elements.  Elements may
+     * be pushed or taken concurrently, so the result is only a snapshot.
+     *
+     * @return {@code true} if this deque contains no elements
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of elements this deque can contain without increasing in size.
+     *
+     * @return the number of elements this deque can contain without increasing in size.
+     */
+    public int space() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,183 @@
+package fallk.neatarrays;
+
+/**
+ * Counters kept by a primitive deque on how it uses its backing array: how
+ * often it grew or shrank, how large it got, how many bytes it allocated,
+ * and how full it is.
+ *
+ * <p>Collecting them is opt-in twice over.  The JVM has to be started with
+ * {@code -Dfallk.neatarrays.metrics=true}, otherwise {@link #ENABLED} is
+ * {@code false}, a constant the JIT folds away together with every hook that
+ * tests it.  And each deque only keeps counters once {@code enableStats()}
+ * has been called on it.  Like the deque, a {@code DequeStats} is not
+ * thread-safe.
+ */
+public final class DequeStats {
+
+    /**
+     * Whether deques collect statistics at all, from the system property
+     * {@code fallk.neatarrays.metrics}.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("fallk.neatarrays.metrics");
+
+    /**
+     * Receives the resize events of a deque as they happen.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called after the deque has moved to a new backing array.
+         *
+         * @param stats the statistics of the deque, already updated
+         * @param oldCapacity the capacity before the resize
+         * @param newCapacity the capacity after the resize
+         */
+        void resized(DequeStats stats, int oldCapacity, int newCapacity);
+    }
+
+    private final int elementBytes;
+
+    private int growths;
+
+    private int shrinks;
+
+    private int peakSize;
+
+    private int size;
+
+    private int capacity;
+
+    private long allocatedBytes;
+
+    private Listener listener;
+
+    /**
+     * Creates the statistics of a deque that currently has an array of the
+     * specified capacity, which counts as allocated.
+     *
+     * @param elementBytes the size of an element in bytes
+     * @param capacity the current capacity of the deque
+     * @param size the current size of the deque
+     */
+    public DequeStats(int elementBytes, int capacity, int size) {
+        this.elementBytes = elementBytes;
+        this.capacity = capacity;
+        allocatedBytes = (long) capacity * elementBytes;
+        recordSize(size);
+    }
+
+    /**
+     * Records the size of the deque after elements were added to it, or
+     * when the statistics are sampled.  Called by the deque.
+     *
+     * @param size the size of the deque
+     */
+    public void recordSize(int size) {
+        this.size = size;
+        if (size > peakSize)
+            peakSize = size;
+    }
+
+    /**
+     * Records that the deque moved to a new array.  Called by the deque.
+     *
+     * @param oldCapacity the capacity of the old array, or 0 if there was
+     *        none
+     * @param newCapacity the capacity of the new array
+     * @param size the size of the deque
+     */
+    public void recordResize(int oldCapacity, int newCapacity, int size) {
+        allocatedBytes += (long) newCapacity * elementBytes;
+        capacity = newCapacity;
+        if (newCapacity > oldCapacity)
+            growths++;
+        else if (newCapacity < oldCapacity)
+            shrinks++;
+        recordSize(size);
+        Listener l = listener;
+        if (l != null)
+            l.resized(this, oldCapacity, newCapacity);
+    }
+
+    /**
+     * Sets the listener told about every resize, replacing any previous
+     * one.
+     *
+     * @param listener the listener, or {@code null} for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the number of times the deque moved to a larger array.
+     *
+     * @return the number of times the deque grew
+     */
+    public int growths() {
+        return growths;
+    }
+
+    /**
+     * Returns the number of times the deque moved to a smaller array.
+     *
+     * @return the number of times the deque shrank
+     */
+    public int shrinks() {
+        return shrinks;
+    }
+
+    /**
+     * Returns the largest size the deque has had.
+     *
+     * @return the largest size the deque has had
+     */
+    public int peakSize() {
+        return peakSize;
+    }
+
+    /**
+     * Returns the size of the deque when it was last sampled.
+     *
+     * @return the size of the deque when it was last sampled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the capacity of the deque.
+     *
+     * @return the capacity of the deque
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the total number of bytes of all the arrays the deque
+     * allocated, counting the one it had when the statistics were enabled.
+     *
+     * @return the total number of bytes allocated
+     */
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns the fraction of the capacity in use when the deque was last
+     * sampled; one minus it is the fraction wasted.
+     *
+     * @return the fill ratio, between 0 and 1
+     */
+    public float fillRatio() {
+        return capacity == 0 ? 0f : (float) size / capacity;
+    }
+
+    @Override
+    public String toString() {
+        return "DequeStats[growths=" + growths + ", shrinks=" + shrinks
+                + ", peakSize=" + peakSize + ", size=" + size
+                + ", capacity=" + capacity + ", allocatedBytes=" + allocatedBytes + "]";
+    }
+}
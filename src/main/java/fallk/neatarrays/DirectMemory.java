@@ -0,0 +1,74 @@
+package fallk.neatarrays;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Releases the native memory behind direct and mapped byte buffers as soon
+ * as they are no longer needed, rather than whenever the garbage collector
+ * gets around to them.
+ *
+ * <p>There is no public API for this, so the JVM's own cleaner is looked up
+ * reflectively: {@code sun.misc.Unsafe.invokeCleaner} on Java 9 and later,
+ * and {@code sun.nio.ch.DirectBuffer.cleaner()} on Java 8.  If neither can
+ * be found, {@link #free} does nothing and the memory is reclaimed by the
+ * collector as usual.
+ */
+final class DirectMemory {
+
+    /** Frees a buffer, or null if this JVM offers no way to. */
+    private static final Consumer<ByteBuffer> FREE = findFree();
+
+    private DirectMemory() {
+    }
+
+    /**
+     * Releases the memory of the specified buffer.  The buffer must have
+     * been obtained from {@link ByteBuffer#allocateDirect} or {@code
+     * FileChannel.map} (not be a slice or duplicate of one), and neither it
+     * nor any view of it may be used afterwards.
+     *
+     * @param buffer the buffer to free
+     */
+    static void free(ByteBuffer buffer) {
+        if (FREE != null && buffer.isDirect())
+            FREE.accept(buffer);
+    }
+
+    private static Consumer<ByteBuffer> findFree() {
+        try { // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // fall through
+        }
+        try { // Java 8
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object c = invoke(cleaner, buffer);
+                if (c != null)
+                    invoke(clean, c);
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
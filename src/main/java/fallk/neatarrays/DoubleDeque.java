@@ -37,11 +37,18 @@ package fallk.neatarrays;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
+import java.util.DoubleSummaryStatistics;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -50,7 +57,12 @@ import java.util.Queue;
 import java.util.Spliterator;
 import java.util.Stack;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoublePredicate;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
 
+import fallk.neatarrays.DequeStats;
 import fallk.neatarrays.DoubleIterator;
 import fallk.neatarrays.DoubleSpliterator;
 import fallk.dev.InternalAssert;
@@ -130,11 +142,41 @@ public class DoubleDeque implements Cloneable, Serializable
      */
     transient int tail;
 
+    /**
+     * The fraction of the capacity below which the array is halved once
+     * elements are removed, or 0 if the deque never shrinks on its own.
+     * This is a setting of the instance rather than part of its contents,
+     * so it is not serialized.
+     */
+    private transient float shrinkThreshold;
+
+    /**
+     * The size below which removals shrink the array; kept in step with
+     * shrinkThreshold whenever the capacity changes, and 0 when the deque
+     * cannot or may not shrink.
+     */
+    private transient int shrinkSize;
+
+    /**
+     * The statistics of this deque, or {@code null} unless {@link
+     * #enableStats} was called while {@link DequeStats#ENABLED}.  Every hook
+     * tests {@code DequeStats.ENABLED} first, so they cost nothing when
+     * statistics are disabled.  Not serialized, and not shared by clones.
+     */
+    private transient DequeStats stats;
+
     /**
      * The minimum capacity that we'll use for a newly created deque.
      * Must be a power of 2.
      */
     private static final int MIN_INITIAL_CAPACITY = 8;
+
+    /**
+     * The largest allowed shrink threshold.  A deque shrunk below it is at
+     * most half full afterwards, so it has to double in size again before
+     * it grows, rather than thrashing between the two capacities.
+     */
+    public static final float MAX_SHRINK_THRESHOLD = 0.25f;
     
     /**
      * initialize a smaller piece of the array and use the System.arraycopy 
@@ -155,11 +197,12 @@ public class DoubleDeque implements Cloneable, Serializable
     // ******  Array allocation and resizing utilities ******
 
     /**
-     * Allocates empty array to hold the given number of elements.
+     * Returns the smallest power of two large enough to hold the given
+     * number of elements without the array becoming full.
      *
      * @param numElements  the number of elements to hold
      */
-    private void allocateElements(int numElements) {
+    private static int calculateSize(int numElements) {
         int initialCapacity = MIN_INITIAL_CAPACITY;
         // Find the best power of two to hold elements.
         // Tests "<=" because arrays aren't kept full.
@@ -175,8 +218,20 @@ public class DoubleDeque implements Cloneable, Serializable
             if (initialCapacity < 0)   // Too many elements, must back off
                 initialCapacity >>>= 1;// Good luck allocating 2 ^ 30 elements
         }
-        elements = new double[initialCapacity];
+        return initialCapacity;
+    }
+
+    /**
+     * Allocates empty array to hold the given number of elements.
+     *
+     * @param numElements  the number of elements to hold
+     */
+    private void allocateElements(int numElements) {
+        int oldCapacity = elements == null ? 0 : elements.length;
+        elements = new double[calculateSize(numElements)];
         shortFill(elements);
+        updateShrinkSize();
+        recordResize(oldCapacity);
     }
 
     /**
@@ -198,6 +253,138 @@ public class DoubleDeque implements Cloneable, Serializable
         elements = a;
         head = 0;
         tail = n;
+        updateShrinkSize();
+        recordResize(n);
+    }
+
+    /**
+     * Moves the elements into a new array of the given capacity, which must
+     * be a power of two larger than the current size.  The ring is
+     * linearised by the same copy, so the first element ends up at index 0.
+     */
+    private void reallocate(int newCapacity) {
+        int size = size();
+        int oldCapacity = elements.length;
+        double[] a = new double[newCapacity];
+        shortFill(a);
+        copyElements(a);
+        elements = a;
+        head = 0;
+        tail = size;
+        updateShrinkSize();
+        recordResize(oldCapacity);
+    }
+
+    private void recordResize(int oldCapacity) {
+        if (DequeStats.ENABLED && stats != null)
+            stats.recordResize(oldCapacity, elements.length, size());
+    }
+
+    private void recordSize() {
+        if (DequeStats.ENABLED && stats != null)
+            stats.recordSize(size());
+    }
+
+    private void updateShrinkSize() {
+        int n = elements.length;
+        shrinkSize = n > MIN_INITIAL_CAPACITY ? (int) (n * shrinkThreshold) : 0;
+    }
+
+    /**
+     * Halves the array, as many times as the shrink threshold calls for,
+     * in a single reallocation.  Called after removals when automatic
+     * shrinking is enabled.
+     */
+    private void shrinkIfSparse() {
+        int size = size();
+        if (size >= shrinkSize)
+            return;
+        int n = elements.length >>> 1;
+        while (n > MIN_INITIAL_CAPACITY && size < (int) (n * shrinkThreshold))
+            n >>>= 1;
+        reallocate(n);
+    }
+
+    /**
+     * Grows the array, at most once, so that {@code n} more elements can be
+     * added without any further resizing.
+     */
+    private void reserve(int n) {
+        int required = size() + n;
+        if (required < 0)
+            throw new IllegalStateException("Sorry, deque too big");
+        ensureCapacity(required);
+    }
+
+    /**
+     * Copies {@code len} elements of {@code src} into the ring starting at
+     * index {@code dst}, wrapping around the end of the array if needed.
+     * The caller must already have made room for them.
+     */
+    private void copyIn(double[] src, int srcPos, int dst, int len) {
+        double[] a = elements;
+        int r = Math.min(len, a.length - dst); // slots to the right of dst
+        System.arraycopy(src, srcPos, a, dst, r);
+        System.arraycopy(src, srcPos + r, a, 0, len - r);
+    }
+
+    /**
+     * Copies all elements of {@code d}, in order, into the ring starting at
+     * index {@code dst}.  The caller must already have made room for them.
+     * {@code d} may be this deque, since only free slots are written to.
+     */
+    private void copyIn(DoubleDeque d, int dst) {
+        copyIn(d, 0, d.size(), dst);
+    }
+
+    /**
+     * Copies {@code len} elements of {@code d}, starting with the one at
+     * index {@code from}, in order into the ring starting at index {@code
+     * dst}.  The caller must already have made room for them.  {@code d} may
+     * be this deque, since only free slots are written to.
+     */
+    private void copyIn(DoubleDeque d, int from, int len, int dst) {
+        double[] src = d.elements;
+        int s = (d.head + from) & (src.length - 1);
+        int r = Math.min(len, src.length - s); // elements to the right of s
+        copyIn(src, s, dst, r);
+        copyIn(src, 0, (dst + r) & (elements.length - 1), len - r);
+    }
+
+    /**
+     * Copies {@code len} elements of the ring, starting at index {@code src}
+     * and wrapping around the end of the array if needed, into {@code dst}.
+     */
+    private void copyOut(int src, double[] dst, int dstPos, int len) {
+        double[] a = elements;
+        int r = Math.min(len, a.length - src); // slots to the right of src
+        System.arraycopy(a, src, dst, dstPos, r);
+        System.arraycopy(a, 0, dst, dstPos + r, len - r);
+    }
+
+    /**
+     * Resets {@code len} slots of the ring, starting at index {@code from}
+     * and wrapping around the end of the array if needed, to
+     * {@code NULL_VALUE}.
+     */
+    private void clearRange(int from, int len) {
+        double[] a = elements;
+        int r = Math.min(len, a.length - from);
+        Arrays.fill(a, from, from + r, NULL_VALUE);
+        Arrays.fill(a, 0, len - r, NULL_VALUE);
+    }
+
+    /**
+     * Removes the first {@code n} elements, of which there must be at least
+     * that many, and shrinks the array if automatic shrinking calls for it.
+     * The common tail of the bulk removal methods.
+     */
+    private void discardFirst(int n) {
+        int h = head;
+        clearRange(h, n);
+        head = (h + n) & (elements.length - 1);
+        if (shrinkSize != 0)
+            shrinkIfSparse();
     }
 
     /**
@@ -253,11 +440,119 @@ public class DoubleDeque implements Cloneable, Serializable
     }
 
     public void addAll(Collection<Double> c) {
+        reserve(c.size());
         for (Double s : c) {
             add(s);
         }
     }
 
+    /**
+     * Inserts the elements of the specified array at the end of this deque,
+     * in array order.  The deque is grown at most once, straight to the
+     * capacity needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllLast(double[] a) {
+        addAllLast(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the end of this deque, in array order.  The deque is
+     * grown at most once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllLast(double[] a, int off, int len) {
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int t = tail;
+        copyIn(a, off, t, len);
+        tail = (t + len) & (elements.length - 1);
+        recordSize();
+    }
+
+    /**
+     * Inserts all elements of the specified deque at the end of this deque,
+     * in the order they appear in {@code d}.  The deque is grown at most
+     * once, straight to the capacity needed.
+     *
+     * @param d the deque whose elements are to be added; may be this deque
+     */
+    public void addAllLast(DoubleDeque d) {
+        int n = d.size();
+        if (n == 0)
+            return;
+        reserve(n);
+        int t = tail;
+        copyIn(d, t);
+        tail = (t + n) & (elements.length - 1);
+        recordSize();
+    }
+
+    /**
+     * Inserts the elements of the specified array at the front of this
+     * deque.  The array order is kept, so {@code a[0]} becomes the first
+     * element.  The deque is grown at most once, straight to the capacity
+     * needed.
+     *
+     * @param a the elements to add
+     */
+    public void addAllFirst(double[] a) {
+        addAllFirst(a, 0, a.length);
+    }
+
+    /**
+     * Inserts {@code len} elements of the specified array, starting at
+     * {@code off}, at the front of this deque.  The array order is kept, so
+     * {@code a[off]} becomes the first element.  The deque is grown at most
+     * once, straight to the capacity needed.
+     *
+     * @param a the array holding the elements to add
+     * @param off the index of the first element to add
+     * @param len the number of elements to add
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len} is greater than {@code a.length}
+     */
+    public void addAllFirst(double[] a, int off, int len) {
+        if (off < 0 || len < 0 || len > a.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+        reserve(len);
+        int h = (head - len) & (elements.length - 1);
+        copyIn(a, off, h, len);
+        head = h;
+        recordSize();
+    }
+
+    /**
+     * Inserts all elements of the specified deque at the front of this
+     * deque.  Their order is kept, so the first element of {@code d} becomes
+     * the first element of this deque.  The deque is grown at most once,
+     * straight to the capacity needed.
+     *
+     * @param d the deque whose elements are to be added; may be this deque
+     */
+    public void addAllFirst(DoubleDeque d) {
+        int n = d.size();
+        if (n == 0)
+            return;
+        reserve(n);
+        int h = (head - n) & (elements.length - 1);
+        copyIn(d, h);
+        head = h;
+        recordSize();
+    }
+
     // The main insertion and extraction methods are addFirst,
     // addLast, pollFirst, pollLast. The other methods are defined in
     // terms of these.
@@ -272,6 +567,7 @@ public class DoubleDeque implements Cloneable, Serializable
         elements[head = (head - 1) & (elements.length - 1)] = e;
         if (head == tail)
             doubleCapacity();
+        recordSize();
     }
 
     /**
@@ -286,6 +582,7 @@ public class DoubleDeque implements Cloneable, Serializable
         elements[tail] = e;
         if ( (tail = (tail + 1) & (elements.length - 1)) == head)
             doubleCapacity();
+        recordSize();
     }
 
     /**
@@ -340,6 +637,8 @@ public class DoubleDeque implements Cloneable, Serializable
         double result = elements[h];
         elements[h] = NULL_VALUE; // Must NULL_VALUE out slot
         head = (h + 1) & (elements.length - 1);
+        if (shrinkSize != 0)
+            shrinkIfSparse();
         return result;
     }
 
@@ -353,9 +652,77 @@ public class DoubleDeque implements Cloneable, Serializable
         double result = elements[t];
         elements[t] = NULL_VALUE; // Must NULL_VALUE out slot
         tail = t;
+        if (shrinkSize != 0)
+            shrinkIfSparse();
         return result;
     }
 
+    /**
+     * Retrieves and removes up to {@code max} elements from the head of this
+     * deque, storing them in order in {@code dst} starting at {@code off}.
+     * The elements are moved with at most two array copies, and head is
+     * advanced once.
+     *
+     * @param dst the array to store the elements in
+     * @param off the index in {@code dst} of the first element
+     * @param max the maximum number of elements to remove
+     * @return the number of elements removed, which is {@code 0} if this
+     *         deque is empty
+     * @throws IndexOutOfBoundsException if {@code off} or {@code max} is
+     *         negative, or {@code off + max} is greater than {@code dst.length}
+     */
+    public int pollFirst(double[] dst, int off, int max) {
+        if (off < 0 || max < 0 || max > dst.length - off)
+            throw new IndexOutOfBoundsException();
+        int n = Math.min(max, size());
+        if (n == 0)
+            return 0;
+        copyOut(head, dst, off, n);
+        discardFirst(n);
+        return n;
+    }
+
+    /**
+     * Removes all elements of this deque and adds them, in order, to the end
+     * of the specified deque.
+     *
+     * @param d the deque to transfer the elements to
+     * @return the number of elements transferred
+     * @throws IllegalArgumentException if {@code d} is this deque
+     */
+    public int drainTo(DoubleDeque d) {
+        return drainTo(d, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes up to {@code max} elements from the head of this deque and
+     * adds them, in order, to the end of the specified deque.  The target is
+     * grown at most once, and the elements are moved segment by segment
+     * rather than one at a time.
+     *
+     * @param d the deque to transfer the elements to
+     * @param max the maximum number of elements to transfer
+     * @return the number of elements transferred
+     * @throws IllegalArgumentException if {@code d} is this deque
+     */
+    public int drainTo(DoubleDeque d, int max) {
+        if (d == this)
+            throw new IllegalArgumentException();
+        int n = Math.min(max, size());
+        if (n <= 0)
+            return 0;
+        d.reserve(n);
+        int h = head;
+        int t = d.tail;
+        int r = Math.min(n, elements.length - h); // elements to the right of h
+        d.copyIn(elements, h, t, r);
+        d.copyIn(elements, 0, (t + r) & (d.elements.length - 1), n - r);
+        d.tail = (t + n) & (d.elements.length - 1);
+        d.recordSize();
+        discardFirst(n);
+        return n;
+    }
+
     /**
      * @throws NoSuchElementException if this deque is empty
      */
@@ -501,6 +868,7 @@ public class DoubleDeque implements Cloneable, Serializable
     }
 
     void checkInvariants() {
+        assert (elements.length & (elements.length - 1)) == 0;
         assert elements[tail] == NULL_VALUE;
         assert head == tail ? elements[head] == NULL_VALUE :
             (elements[head] != NULL_VALUE &&
@@ -509,6 +877,7 @@ public class DoubleDeque implements Cloneable, Serializable
     }
 
     public void jUnitAssertInvariants() {
+        InternalAssert.assertTrue((elements.length & (elements.length - 1)) == 0);
         InternalAssert.assertTrue(elements[tail] == NULL_VALUE);
         InternalAssert.assertTrue(head == tail ? elements[head] == NULL_VALUE :
             (elements[head] != NULL_VALUE &&
@@ -585,6 +954,99 @@ public class DoubleDeque implements Cloneable, Serializable
         return elements.length;
     }
 
+    /**
+     * Starts collecting {@link DequeStats statistics} on this deque, if
+     * statistics are {@link DequeStats#ENABLED enabled}; otherwise does
+     * nothing.  The current array counts as the first allocation.  Calling
+     * this method again keeps the statistics already collected.
+     *
+     * @return the statistics of this deque, or {@code null} if statistics
+     *         are disabled
+     */
+    public DequeStats enableStats() {
+        if (DequeStats.ENABLED && stats == null)
+            stats = new DequeStats(Double.BYTES, elements.length, size());
+        return stats;
+    }
+
+    /**
+     * Returns the statistics of this deque, with its current size sampled
+     * into them, or {@code null} if they were never {@link #enableStats
+     * enabled}.
+     *
+     * @return the statistics of this deque, or {@code null}
+     */
+    public DequeStats stats() {
+        DequeStats s = stats;
+        if (s != null)
+            s.recordSize(size());
+        return s;
+    }
+
+    /**
+     * Increases the capacity of this deque, if necessary, so that it can
+     * hold at least {@code minCapacity} elements without growing again.
+     * The array is reallocated at most once, straight to the required power
+     * of two, and the ring is linearised by the same copy.
+     *
+     * <p>If automatic shrinking is enabled, removing elements before the
+     * capacity is used may shrink the deque again.
+     *
+     * @param minCapacity the desired minimum capacity
+     * @throws IllegalStateException if {@code minCapacity} is more than the
+     *         largest deque can hold
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity < elements.length)
+            return;
+        int newCapacity = calculateSize(minCapacity);
+        if (newCapacity <= minCapacity)
+            throw new IllegalStateException("Sorry, deque too big");
+        reallocate(newCapacity);
+    }
+
+    /**
+     * Shrinks the capacity of this deque to the smallest power of two that
+     * holds its current elements.  An application can use this operation to
+     * release the memory left behind by a burst of elements.
+     */
+    public void trimToSize() {
+        int n = calculateSize(size());
+        if (n < elements.length)
+            reallocate(n);
+    }
+
+    /**
+     * Enables or disables automatic shrinking.  When enabled, removing an
+     * element from a deque that is less than {@code threshold} full halves
+     * its capacity (repeatedly, if need be, but in one reallocation), never
+     * going below the minimum capacity.  Since a shrunk deque is at most
+     * half full, it does not grow again until it has doubled in size.
+     *
+     * <p>The setting is not serialized and starts out disabled.
+     *
+     * @param threshold the fraction of the capacity below which the deque
+     *        shrinks, or {@code 0} to disable automatic shrinking
+     * @throws IllegalArgumentException if {@code threshold} is negative or
+     *         greater than {@link #MAX_SHRINK_THRESHOLD}
+     */
+    public void setShrinkThreshold(float threshold) {
+        if (!(threshold >= 0 && threshold <= MAX_SHRINK_THRESHOLD))
+            throw new IllegalArgumentException("Illegal shrink threshold: " + threshold);
+        shrinkThreshold = threshold;
+        updateShrinkSize();
+    }
+
+    /**
+     * Returns the fraction of the capacity below which this deque shrinks,
+     * or {@code 0} if automatic shrinking is disabled.
+     *
+     * @return the shrink threshold of this deque
+     */
+    public float getShrinkThreshold() {
+        return shrinkThreshold;
+    }
+
     /**
      * Returns {@code true} if this deque contains no elements.
      *
@@ -703,14 +1165,59 @@ public class DoubleDeque implements Cloneable, Serializable
      * @return {@code true} if this deque contains the specified element
      */
     public boolean contains(double o) {
-        if (head == tail) return false;
-        double s = NULL_VALUE;
-        for (DoubleIterator it = this.iterator(); it.hasNext(); s = it.next()) {
-            if (s == o) {
-                return true;
-            }
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * <p>The ring is searched as at most two contiguous runs of the array,
+     * with plain counted loops the JIT can unroll.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the element, or -1
+     */
+    public int indexOf(double o) {
+        final double[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        for (int i = h; i < end; i++)
+            if (es[i] == o)
+                return i - h;
+        if (h > t) { // wrapped; continue at the start of the array
+            for (int i = 0; i < t; i++)
+                if (es[i] == o)
+                    return es.length - h + i;
         }
-        return false;
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element in
+     * this deque, counting from the head, or -1 if this deque does not
+     * contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the element, or -1
+     * @see #indexOf(double)
+     */
+    public int lastIndexOf(double o) {
+        final double[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h > t) { // wrapped; start with the run at the start of the array
+            for (int i = t - 1; i >= 0; i--)
+                if (es[i] == o)
+                    return es.length - h + i;
+        }
+        final int end = h <= t ? t : es.length;
+        for (int i = end - 1; i >= h; i--)
+            if (es[i] == o)
+                return i - h;
+        return -1;
     }
 
     /**
@@ -727,29 +1234,201 @@ public class DoubleDeque implements Cloneable, Serializable
      * @return {@code true} if this deque contained the specified element
      */
     public boolean remove(double o) {
-        int h = head;
-        int t = tail;
-        if (h != t) { // clear all cells
-            int ord = 0;//ordered index
-            int i = h;
-            int mask = elements.length - 1;
-            do {
-                if (elements[i] == o) {
-                    delete(ord);
-                    return true;
+        return removeFirstOccurrence(o);
+    }
+
+    /**
+     * Removes the first occurrence of the specified element in this
+     * deque (when traversing the deque from head to tail).
+     * If the deque does not contain the element, it is unchanged.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return {@code true} if the deque contained the specified element
+     */
+    public boolean removeFirstOccurrence(double o) {
+        int i = indexOf(o);
+        if (i < 0)
+            return false;
+        delete((head + i) & (elements.length - 1));
+        return true;
+    }
+
+    /**
+     * Removes the last occurrence of the specified element in this
+     * deque (when traversing the deque from head to tail).
+     * If the deque does not contain the element, it is unchanged.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return {@code true} if the deque contained the specified element
+     */
+    public boolean removeLastOccurrence(double o) {
+        int i = lastIndexOf(o);
+        if (i < 0)
+            return false;
+        delete((head + i) & (elements.length - 1));
+        return true;
+    }
+
+    /**
+     * Removes all of the elements of this deque that satisfy the given
+     * predicate.  The survivors are compacted towards the head in a single
+     * pass, and only the slots freed at the tail are reset afterwards.
+     *
+     * <p>If the predicate throws, the elements it has not been applied to
+     * yet are kept, and the exception is relayed to the caller.
+     *
+     * @param filter a predicate which returns {@code true} for elements to
+     *        be removed
+     * @return {@code true} if any elements were removed
+     * @throws NullPointerException if the specified filter is null
+     */
+    public boolean removeIf(DoublePredicate filter) {
+        if (filter == null)
+            throw new NullPointerException();
+        final double[] es = elements;
+        final int mask = es.length - 1;
+        final int t = tail;
+        int i = head;
+        // The leading run of survivors stays where it is
+        while (i != t && !filter.test(es[i]))
+            i = (i + 1) & mask;
+        if (i == t)
+            return false;
+        int w = i; // where the next survivor goes
+        try {
+            for (i = (i + 1) & mask; i != t; i = (i + 1) & mask) {
+                double e = es[i];
+                if (!filter.test(e)) {
+                    es[w] = e;
+                    w = (w + 1) & mask;
                 }
-                i = (i + 1) & mask;
-                ord++;
-            } while (i != t);
-            //for testing
-            //Assert.assertTrue(ord == size());
+            }
+        } finally {
+            // Only does anything if the filter threw
+            for (; i != t; i = (i + 1) & mask, w = (w + 1) & mask)
+                es[w] = es[i];
+            clearRange(w, (t - w) & mask);
+            tail = w;
         }
-        
-        return false;
+        if (shrinkSize != 0)
+            shrinkIfSparse();
+        return true;
+    }
+
+    /**
+     * Removes all of the elements of this deque that are also contained in
+     * the specified array.  Membership is decided as by {@link
+     * Arrays#binarySearch(double[], double)} on a sorted copy of the
+     * array, so the whole operation takes O((n + m) log m) time.
+     *
+     * @param a array containing the elements to be removed from this deque
+     * @return {@code true} if this deque changed as a result of the call
+     */
+    public boolean removeAll(double[] a) {
+        return removeIfContained(a.clone(), true);
+    }
+
+    /**
+     * Removes all of the elements of this deque that are also contained in
+     * the specified deque.
+     *
+     * @param d deque containing the elements to be removed from this deque;
+     *        may be this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @see #removeAll(double[])
+     */
+    public boolean removeAll(DoubleDeque d) {
+        return removeIfContained(d.toArray(), true);
+    }
+
+    /**
+     * Retains only the elements of this deque that are contained in the
+     * specified array.  Membership is decided as by {@link
+     * Arrays#binarySearch(double[], double)} on a sorted copy of the
+     * array, so the whole operation takes O((n + m) log m) time.
+     *
+     * @param a array containing the elements to be retained in this deque
+     * @return {@code true} if this deque changed as a result of the call
+     */
+    public boolean retainAll(double[] a) {
+        return removeIfContained(a.clone(), false);
+    }
+
+    /**
+     * Retains only the elements of this deque that are contained in the
+     * specified deque.
+     *
+     * @param d deque containing the elements to be retained in this deque
+     * @return {@code true} if this deque changed as a result of the call
+     * @see #retainAll(double[])
+     */
+    public boolean retainAll(DoubleDeque d) {
+        return removeIfContained(d.toArray(), false);
     }
 
-    public void removeAt(int i) {
+    /**
+     * Removes the elements whose presence in {@code a}, which is sorted in
+     * place, equals {@code contained}.
+     */
+    private boolean removeIfContained(double[] a, boolean contained) {
+        Arrays.sort(a);
+        return removeIf(e -> (Arrays.binarySearch(a, e) >= 0) == contained);
+    }
+
+    /**
+     * Removes the element at the specified position in this deque, counting
+     * from the head.  Whichever side of the element is shorter is shifted
+     * to close the gap.
+     *
+     * @param index the index of the element to be removed
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public double removeAt(int index) {
+        checkIndex(index);
+        int i = (head + index) & (elements.length - 1);
+        double result = elements[i];
         delete(i);
+        return result;
+    }
+
+    /**
+     * Returns the element at the specified position in this deque, counting
+     * from the head.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this deque
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public double get(int index) {
+        checkIndex(index);
+        return elements[(head + index) & (elements.length - 1)];
+    }
+
+    /**
+     * Replaces the element at the specified position in this deque, counting
+     * from the head, with the specified element.
+     *
+     * @param index index of the element to replace
+     * @param e element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public double set(int index, double e) {
+        checkIndex(index);
+        int i = (head + index) & (elements.length - 1);
+        double result = elements[i];
+        elements[i] = e;
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        int size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
     }
 
     /**
@@ -767,9 +1446,261 @@ public class DoubleDeque implements Cloneable, Serializable
                 elements[i] = NULL_VALUE;
                 i = (i + 1) & mask;
             } while (i != t);
+            if (shrinkSize != 0)
+                shrinkIfSparse();
+        }
+    }
+
+    // *** Aggregate methods ***
+
+    /**
+     * Returns the sum of the elements in this deque, or {@code 0} if it is
+     * empty.  The elements are summed in place, without boxing or copying.
+     * The sum is compensated, as by {@link DoubleSummaryStatistics#getSum},
+     * so it agrees with {@link #parallelSum()} up to the order of addition.
+     *
+     * @return the sum of the elements in this deque
+     */
+    public double sum() {
+        return summaryStatistics().getSum();
+    }
+
+    /**
+     * Returns the smallest element in this deque, as by {@link Math#min}.
+     *
+     * @return the smallest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public double min() {
+        final double[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h == t) // isEmpty()
+            throw new NoSuchElementException();
+        final int end = h <= t ? t : es.length;
+        double min = es[h];
+        for (int i = h + 1; i < end; i++)
+            min = Math.min(min, es[i]);
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                min = Math.min(min, es[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the largest element in this deque, as by {@link Math#max}.
+     *
+     * @return the largest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public double max() {
+        final double[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h == t) // isEmpty()
+            throw new NoSuchElementException();
+        final int end = h <= t ? t : es.length;
+        double max = es[h];
+        for (int i = h + 1; i < end; i++)
+            max = Math.max(max, es[i]);
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                max = Math.max(max, es[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of the elements in this deque.
+     *
+     * @return the average of the elements in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public double average() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return sum() / size();
+    }
+
+    /**
+     * Returns the count, sum, min, max and average of the elements in this
+     * deque, gathered in a single pass.
+     *
+     * @return the summary statistics of the elements in this deque
+     */
+    public DoubleSummaryStatistics summaryStatistics() {
+        final double[] es = elements;
+        final int h = head;
+        final int t = tail;
+        final int end = h <= t ? t : es.length;
+        DoubleSummaryStatistics stats = new DoubleSummaryStatistics();
+        for (int i = h; i < end; i++)
+            stats.accept(es[i]);
+        if (h > t) {
+            for (int i = 0; i < t; i++)
+                stats.accept(es[i]);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the sum of the elements in this deque, computed in parallel
+     * on the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the sum of the elements in this deque
+     * @see #sum()
+     */
+    public double parallelSum() {
+        return parallelSummaryStatistics().getSum();
+    }
+
+    /**
+     * Returns the smallest element in this deque, computed in parallel on
+     * the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the smallest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #min()
+     */
+    public double parallelMin() {
+        return parallelStream().min().getAsDouble();
+    }
+
+    /**
+     * Returns the largest element in this deque, computed in parallel on
+     * the common fork-join pool.  Only worthwhile for very large deques.
+     *
+     * @return the largest element in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #max()
+     */
+    public double parallelMax() {
+        return parallelStream().max().getAsDouble();
+    }
+
+    /**
+     * Returns the arithmetic mean of the elements in this deque, computed
+     * in parallel on the common fork-join pool.  Only worthwhile for very
+     * large deques.
+     *
+     * @return the average of the elements in this deque
+     * @throws NoSuchElementException if this deque is empty
+     * @see #average()
+     */
+    public double parallelAverage() {
+        return parallelStream().average().getAsDouble();
+    }
+
+    /**
+     * Returns the summary statistics of the elements in this deque,
+     * computed in parallel on the common fork-join pool.  Only worthwhile
+     * for very large deques.
+     *
+     * @return the summary statistics of the elements in this deque
+     * @see #summaryStatistics()
+     */
+    public DoubleSummaryStatistics parallelSummaryStatistics() {
+        return parallelStream().summaryStatistics();
+    }
+
+    // *** Sorting and searching ***
+
+    /**
+     * Moves the elements to the start of the array, so that head is 0 and
+     * they occupy {@code elements[0, size)} in order.
+     */
+    private void linearize() {
+        int h = head;
+        int t = tail;
+        if (h == 0)
+            return;
+        if (h < t) {
+            int size = t - h;
+            System.arraycopy(elements, h, elements, 0, size);
+            Arrays.fill(elements, Math.max(size, h), t, NULL_VALUE);
+            head = 0;
+            tail = size;
+        } else if (h == t) { // isEmpty()
+            head = tail = 0;
+        } else {
+            // rotate the whole array left by h, without a second array:
+            // [tail part, free, head part] becomes [head part, tail part, free]
+            double[] a = elements;
+            int size = size();
+            reverse(a, 0, h);
+            reverse(a, h, a.length);
+            reverse(a, 0, a.length);
+            head = 0;
+            tail = size;
         }
     }
 
+    /**
+     * Reverses the order of {@code a[from, to)} in place.
+     */
+    private static void reverse(double[] a, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            double x = a[i];
+            a[i] = a[j];
+            a[j] = x;
+        }
+    }
+
+    /**
+     * Sorts the elements of this deque into ascending numerical order, as
+     * by {@link Arrays#sort(double[])}.  The ring is first linearised in
+     * place, so the first element ends up at the start of the array, and
+     * then sorted there without copying it out.
+     */
+    public void sort() {
+        linearize();
+        Arrays.sort(elements, 0, tail);
+    }
+
+    /**
+     * Sorts the elements of this deque into ascending numerical order, as
+     * by {@link Arrays#parallelSort(double[])}.  This is {@link #sort()}
+     * on the common fork-join pool, and is only worthwhile for very large
+     * deques.
+     */
+    public void parallelSort() {
+        linearize();
+        Arrays.parallelSort(elements, 0, tail);
+    }
+
+    /**
+     * Searches this deque for the specified value using the binary search
+     * algorithm.  The deque must be sorted (as by {@link #sort()}) prior to
+     * making this call; elements may have been added or removed at either
+     * end since, as long as the order is kept.  If it is not sorted, the
+     * results are undefined.  If the deque contains multiple elements with
+     * the specified value, there is no guarantee which one will be found.
+     *
+     * @param key the value to be searched for
+     * @return index of the search key, counting from the head, if it is
+     *         contained in the deque; otherwise,
+     *         <tt>(-(<i>insertion point</i>) - 1)</tt>, as in {@link
+     *         Arrays#binarySearch(double[], double)}
+     */
+    public int binarySearch(double key) {
+        final double[] es = elements;
+        final int h = head;
+        final int t = tail;
+        if (h <= t) {
+            int r = Arrays.binarySearch(es, h, t, key);
+            return r >= 0 ? r - h : r + h;
+        }
+        // wrapped; [h, es.length) holds the smaller half, [0, t) the larger
+        if (t > 0 && Double.compare(key, es[0]) >= 0) {
+            int offset = es.length - h;
+            int r = Arrays.binarySearch(es, 0, t, key);
+            return r >= 0 ? r + offset : r - offset;
+        }
+        int r = Arrays.binarySearch(es, h, es.length, key);
+        return r >= 0 ? r - h : r + h;
+    }
+
     /**
      * Returns an array containing all of the elements in this deque
      * in proper sequence (from first to last element).
@@ -799,6 +1730,7 @@ public class DoubleDeque implements Cloneable, Serializable
             
             DoubleDeque result = (DoubleDeque) super.clone();
             result.elements = Arrays.copyOf(elements, elements.length);
+            result.stats = null;
             return result;
         } catch (CloneNotSupportedException e) {
             throw new AssertionError();
@@ -807,24 +1739,32 @@ public class DoubleDeque implements Cloneable, Serializable
 
     private static final long serialVersionUID = 2340985798034038923L;
 
+    /**
+     * Tag written in front of the compact serial form.  It is negative so
+     * that it can never be mistaken for the size header that started the
+     * original one-object-per-element form.
+     */
+    private static final int COMPACT_FORMAT = -1;
+
+    /**
+     * Size in bytes of the buffer elements are staged in while they are
+     * written or read in bulk.
+     */
+    private static final int SERIAL_BUFFER_SIZE = 8192;
+
     /**
      * Saves this deque to a stream (that is, serializes it).
      *
-     * @serialData The current size ({@code int}) of the deque,
-     * followed by all of its elements (each an object reference) in
-     * first-to-last order.
+     * @serialData The {@code int} tag {@code -1}, then the current size
+     * ({@code int}) of the deque, followed by all of its elements as raw
+     * big-endian {@code double}s in first-to-last order.  Streams
+     * which start with a non-negative size instead of the tag hold each
+     * element as an object reference, and can still be read.
      */
     private void writeObject(java.io.ObjectOutputStream s)
             throws java.io.IOException {
         s.defaultWriteObject();
-
-        // Write out size
-        s.writeInt(size());
-
-        // Write out elements in order.
-        int mask = elements.length - 1;
-        for (int i = head; i != tail; i = (i + 1) & mask)
-            s.writeObject(elements[i]);
+        writeTo(s);
     }
 
     /**
@@ -833,15 +1773,94 @@ public class DoubleDeque implements Cloneable, Serializable
     private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
         s.defaultReadObject();
 
-        // Read in size and allocate array
-        int size = s.readInt();
+        int format = s.readInt();
+        if (format >= 0) { // legacy form, the tag is the size
+            allocateElements(format);
+            head = 0;
+            tail = format;
+
+            for (int i = 0; i < format; i++)
+                elements[i] = (Double) s.readObject();
+        } else {
+            readCompact(s, format);
+        }
+    }
+
+    /**
+     * Writes the elements of this deque to the specified output in the
+     * compact serial form: a format tag, the size, and then the elements as
+     * raw {@code double}s, staged through a byte buffer so they are
+     * written in bulk.
+     *
+     * <p>This is the same encoding {@code writeObject} uses, without any
+     * of the serialization machinery around it; an {@link
+     * java.io.Externalizable} holder can call it from {@code writeExternal}.
+     *
+     * @param out the output to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int size = size();
+        out.writeInt(COMPACT_FORMAT);
+        out.writeInt(size);
+
+        byte[] buf = new byte[Math.min(size, SERIAL_BUFFER_SIZE / Double.BYTES) * Double.BYTES];
+        DoubleBuffer view = ByteBuffer.wrap(buf).asDoubleBuffer();
+        int h = head;
+        int t = tail;
+        if (h <= t) {
+            writeRange(out, buf, view, h, t);
+        } else {
+            writeRange(out, buf, view, h, elements.length);
+            writeRange(out, buf, view, 0, t);
+        }
+    }
+
+    private void writeRange(DataOutput out, byte[] buf, DoubleBuffer view,
+            int from, int to) throws IOException {
+        while (from < to) {
+            int n = Math.min(to - from, view.capacity());
+            ((Buffer) view).clear(); // not the covariant override Java 8 lacks
+            view.put(elements, from, n);
+            out.write(buf, 0, n * Double.BYTES);
+            from += n;
+        }
+    }
+
+    /**
+     * Replaces the contents of this deque with elements read from the
+     * specified input, which must hold data written by {@link
+     * #writeTo(DataOutput)}.
+     *
+     * @param in the input to read from
+     * @throws IOException if an I/O error occurs, or the input does not
+     *         hold a deque in the compact serial form
+     */
+    public void readFrom(DataInput in) throws IOException {
+        readCompact(in, in.readInt());
+    }
+
+    private void readCompact(DataInput in, int format) throws IOException {
+        if (format != COMPACT_FORMAT)
+            throw new StreamCorruptedException("Unknown deque format " + format);
+        int size = in.readInt();
+        if (size < 0 || calculateSize(size) <= size)
+            throw new StreamCorruptedException("Illegal deque size " + size);
+
         allocateElements(size);
         head = 0;
         tail = size;
 
-        // Read in all elements in the proper order.
-        for (int i = 0; i < size; i++)
-            elements[i] = s.readDouble();
+        byte[] buf = new byte[Math.min(size, SERIAL_BUFFER_SIZE / Double.BYTES) * Double.BYTES];
+        DoubleBuffer view = ByteBuffer.wrap(buf).asDoubleBuffer();
+        for (int i = 0; i < size; ) {
+            int n = Math.min(size - i, view.capacity());
+            in.readFully(buf, 0, n * Double.BYTES);
+            ((Buffer) view).clear(); // not the covariant override Java 8 lacks
+            view.get(elements, i, n);
+            i += n;
+        }
+        recordSize();
     }
 
     /**
@@ -861,6 +1880,30 @@ public class DoubleDeque implements Cloneable, Serializable
         return new DeqSpliterator(this, -1, -1);
     }
 
+    /**
+     * Returns a sequential {@code DoubleStream} with this deque as its
+     * source.  The stream is backed by {@link #spliterator()}, so no copy of
+     * the elements is made.
+     *
+     * @return a sequential {@code DoubleStream} over the elements in
+     *         this deque
+     */
+    public DoubleStream stream() {
+        return StreamSupport.doubleStream(new StreamSpliterator(new DeqSpliterator(this, -1, -1)), false);
+    }
+
+    /**
+     * Returns a possibly parallel {@code DoubleStream} with this deque
+     * as its source.  The stream is split at the midpoint of the ring, in the
+     * same way as {@link #spliterator()}.
+     *
+     * @return a possibly parallel {@code DoubleStream} over the
+     *         elements in this deque
+     */
+    public DoubleStream parallelStream() {
+        return StreamSupport.doubleStream(new StreamSpliterator(new DeqSpliterator(this, -1, -1)), true);
+    }
+
     static final class DeqSpliterator implements DoubleSpliterator {
         private final DoubleDeque deq;
         private int fence;  // -1 until first use
@@ -925,6 +1968,40 @@ public class DoubleDeque implements Cloneable, Serializable
             return false;
         }
 
+        public void forEachRemaining(DoubleConsumer consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            double[] a = deq.elements;
+            int f = getFence(), i = index;
+            index = f;
+            if (i > f) { // wrapped; walk [i, a.length) before [0, f)
+                for (int n = a.length; i < n; i++)
+                    consumer.accept(a[i]);
+                i = 0;
+            }
+            for (; i < f; i++)
+                consumer.accept(a[i]);
+        }
+
+        public boolean tryAdvance(DoubleConsumer consumer) {
+            if (consumer == null)
+                throw new NullPointerException();
+            double[] a = deq.elements;
+            int m = a.length - 1;
+            
+            getFence();
+            
+            int i = index;
+            
+            if (i != fence) {
+                 double e = a[i];
+                index = (i + 1) & m;
+                consumer.accept(e);
+                return true;
+            }
+            return false;
+        }
+
         public long estimateSize() {
             int n = getFence() - index;
             if (n < 0)
@@ -939,5 +2016,38 @@ public class DoubleDeque implements Cloneable, Serializable
         }
     }
 
+    /**
+     * Adapts a {@link DeqSpliterator} to the {@link Spliterator.OfDouble}
+     * expected by {@code java.util.stream}.
+     */
+    static final class StreamSpliterator implements Spliterator.OfDouble {
+        private final DeqSpliterator spliterator;
+
+        StreamSpliterator(DeqSpliterator spliterator) {
+            this.spliterator = spliterator;
+        }
+
+        public StreamSpliterator trySplit() {
+            DeqSpliterator prefix = spliterator.trySplit();
+            return prefix == null ? null : new StreamSpliterator(prefix);
+        }
+
+        public boolean tryAdvance(DoubleConsumer consumer) {
+            return spliterator.tryAdvance(consumer);
+        }
+
+        public void forEachRemaining(DoubleConsumer consumer) {
+            spliterator.forEachRemaining(consumer);
+        }
+
+        public long estimateSize() {
+            return spliterator.estimateSize();
+        }
+
+        public int characteristics() {
+            return spliterator.characteristics();
+        }
+    }
+
 }
 
@@ -0,0 +1,682 @@
+package fallk.neatarrays;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link FloatDeque} kept in a memory-mapped file, so that its
+ * contents survive the process.  Reopening the file with {@link #open}
+ * maps it back in without reading or rebuilding anything.
+ *
+ * <p>The file starts with a 32-byte header holding a magic number, the
+ * format version, the element type, the capacity, and the tail and head
+ * indices, followed by the ring of elements in the same power-of-two layout
+ * as {@code FloatDeque}.  The head and tail in the header are
+ * updated by every operation, each with a single store, and growing the
+ * ring commits the new capacity and tail together in one aligned 8-byte
+ * store, so a crash leaves the header describing either the old ring or the
+ * new one, never a mix of the two.  Changes reach the file whenever the
+ * operating system writes the mapped pages back, which it does even if the
+ * process dies; call {@link #force()} to make them durable against a crash
+ * of the machine as well.
+ *
+ * <p>The whole file is a single mapping, so the capacity is limited to
+ * 1 GiB worth of elements.  Slots that do not hold elements are not kept at
+ * {@code NULL_VALUE}, so {@code NULL_VALUE} can be stored like any other
+ * value.  This class is not thread-safe, and a file must not be opened by
+ * more than one deque at a time.
+ */
+public class FloatMappedDeque implements Closeable
+{
+    // the primitive value that represents 'null'
+    protected static final float NULL_VALUE = Float.MIN_VALUE;
+
+    /** "NADQ", the first four bytes of every deque file. */
+    private static final int MAGIC = 0x4E414451;
+
+    /**
+     * The format version.  Version 2 swapped the head and tail so that the
+     * capacity and tail share one aligned long.
+     */
+    private static final int VERSION = 2;
+
+    // header layout, big-endian
+    private static final int TYPE_OFFSET = 8;
+    private static final int TYPE_LENGTH = 8;
+    private static final int CAPACITY_OFFSET = 16; // with the tail, one long
+    private static final int TAIL_OFFSET = 20;
+    private static final int HEAD_OFFSET = 24;
+    private static final int ORDER_OFFSET = 28;
+
+    /** The size of the file header, in bytes. */
+    private static final int HEADER_SIZE = 32;
+
+    /** The element type as recorded in the header, NUL-padded. */
+    private static final byte[] TYPE = Arrays.copyOf(
+            "float".getBytes(StandardCharsets.US_ASCII), TYPE_LENGTH);
+
+    /**
+     * The minimum capacity that we'll use for a newly created deque.
+     * Must be a power of 2.
+     */
+    private static final int MIN_INITIAL_CAPACITY = 8;
+
+    /**
+     * The largest capacity a deque can have, so that the file fits one
+     * mapping.
+     */
+    private static final int MAX_CAPACITY = (1 << 30) / Float.BYTES;
+
+    private final FileChannel channel;
+
+    /**
+     * The mapping of the whole file; null once the deque is closed.
+     */
+    private MappedByteBuffer map;
+
+    /**
+     * The ring of elements, a view of {@code map} past the header.
+     */
+    private FloatBuffer elements;
+
+    /**
+     * The number of slots in the ring, always a power of two.
+     */
+    private int capacity;
+
+    /**
+     * The index of the element at the head of the deque; or an arbitrary
+     * number equal to tail if the deque is empty.
+     */
+    private int head;
+
+    /**
+     * The index at which the next element would be added to the tail of
+     * the deque.
+     */
+    private int tail;
+
+    private FloatMappedDeque(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the deque stored in the specified file, creating the file with
+     * an initial capacity of 16 elements if it does not exist or is empty.
+     *
+     * @param path the file holding the deque
+     * @return the deque
+     * @throws IOException if an I/O error occurs, or the file does not hold
+     *         a deque of {@code float}s
+     */
+    public static FloatMappedDeque open(Path path) throws IOException {
+        return open(path, 16);
+    }
+
+    /**
+     * Opens the deque stored in the specified file, creating the file with
+     * an initial capacity sufficient to hold the specified number of elements
+     * if it does not exist or is empty.  The number of elements is ignored if
+     * the file already holds a deque.
+     *
+     * @param path the file holding the deque
+     * @param numElements lower bound on initial capacity of a new deque
+     * @return the deque
+     * @throws IOException if an I/O error occurs, or the file does not hold
+     *         a deque of {@code float}s
+     */
+    public static FloatMappedDeque open(Path path, int numElements) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            FloatMappedDeque deque = new FloatMappedDeque(channel);
+            if (channel.size() == 0)
+                deque.create(numElements);
+            else
+                deque.load(path);
+            return deque;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lays out an empty deque in the (empty) file.
+     */
+    private void create(int numElements) throws IOException {
+        int initialCapacity = MIN_INITIAL_CAPACITY;
+        // Find the best power of two to hold elements.
+        // Tests "<=" because arrays aren't kept full.
+        if (numElements >= initialCapacity) {
+            initialCapacity = Integer.highestOneBit(numElements) << 1;
+            if (initialCapacity < 0 || initialCapacity > MAX_CAPACITY)
+                initialCapacity = MAX_CAPACITY;
+        }
+        map(initialCapacity, ByteOrder.nativeOrder());
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        for (int i = 0; i < TYPE_LENGTH; i++)
+            map.put(TYPE_OFFSET + i, TYPE[i]);
+        map.put(ORDER_OFFSET, (byte) (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1));
+        writeHeader();
+    }
+
+    /**
+     * Maps an existing file, checking its header.
+     */
+    private void load(Path path) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE)
+            throw new IOException(path + ": not a deque file");
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException(path + ": not a deque file");
+        }
+        if (header.getInt(0) != MAGIC)
+            throw new IOException(path + ": not a deque file");
+        if (header.getInt(4) != VERSION)
+            throw new IOException(path + ": unsupported deque file version " + header.getInt(4));
+        byte[] type = new byte[TYPE_LENGTH];
+        ((Buffer) header).position(TYPE_OFFSET);
+        header.get(type);
+        if (!Arrays.equals(type, TYPE))
+            throw new IOException(path + ": holds a deque of "
+                    + new String(type, StandardCharsets.US_ASCII).trim() + ", not float");
+        int cap = header.getInt(CAPACITY_OFFSET);
+        int h = header.getInt(HEAD_OFFSET);
+        int t = header.getInt(TAIL_OFFSET);
+        if (cap < MIN_INITIAL_CAPACITY || cap > MAX_CAPACITY || Integer.bitCount(cap) != 1
+                || h < 0 || h >= cap || t < 0 || t >= cap
+                || fileSize < HEADER_SIZE + (long) cap * Float.BYTES)
+            throw new IOException(path + ": corrupt deque header");
+        map(cap, header.get(ORDER_OFFSET) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        head = h;
+        tail = t;
+    }
+
+    /**
+     * Maps the header and a ring of the given capacity, growing the file if
+     * needed, and makes the mapping current.  The previous mapping, if any,
+     * must be freed by the caller.
+     */
+    private void map(int newCapacity, ByteOrder order) throws IOException {
+        MappedByteBuffer m = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) newCapacity * Float.BYTES);
+        ByteBuffer data = m.duplicate();
+        ((Buffer) data).position(HEADER_SIZE);
+        map = m;
+        elements = data.slice().order(order).asFloatBuffer();
+        capacity = newCapacity;
+    }
+
+    /**
+     * Commits the capacity and tail to the header in one store, after the
+     * head.  The header maps are big-endian, so the capacity is the high
+     * half of the long.
+     */
+    private void writeHeader() {
+        map.putInt(HEAD_OFFSET, head);
+        map.putLong(CAPACITY_OFFSET, (long) capacity << 32 | (tail & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Doubles the capacity of this deque.  Call only when one slot is left,
+     * so that the head and tail stay distinct throughout.  Only the wrapped
+     * part of the ring, if any, is moved.
+     */
+    private void grow() {
+        int n = capacity;
+        int newCapacity = n << 1;
+        if (newCapacity > MAX_CAPACITY)
+            throw new IllegalStateException("Sorry, deque too big");
+        MappedByteBuffer old = map;
+        ByteOrder order = elements.order();
+        try {
+            map(newCapacity, order);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow deque file", e);
+        }
+        if (tail < head) {
+            // move [0, tail) to [n, n + tail), right after [head, n)
+            FloatBuffer src = elements.duplicate();
+            FloatBuffer dst = elements.duplicate();
+            ((Buffer) src).limit(tail);
+            ((Buffer) dst).position(n);
+            dst.put(src);
+            tail += n;
+        }
+        writeHeader();
+        DirectMemory.free(old);
+    }
+
+    private FloatBuffer elements() {
+        if (map == null)
+            throw new IllegalStateException("Deque is closed");
+        return elements;
+    }
+
+    /**
+     * Forces any changes made to this deque out to the storage device, so
+     * that they survive a crash of the machine.
+     */
+    public void force() {
+        elements();
+        map.force();
+    }
+
+    /**
+     * Writes out the state of this deque and closes its file.  Closing a
+     * deque that is already closed has no effect.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void close() throws IOException {
+        MappedByteBuffer m = map;
+        if (m != null) {
+            map = null;
+            elements = null;
+            try {
+                m.force();
+            } finally {
+                DirectMemory.free(m);
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if this deque has not been closed.
+     *
+     * @return {@code true} if this deque has not been closed
+     */
+    public boolean isOpen() {
+        return map != null;
+    }
+
+    // The main insertion and extraction methods are addFirst,
+    // addLast, pollFirst, pollLast. The other methods are defined in
+    // terms of these.
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     */
+    public void addFirst(float e) {
+        FloatBuffer es = elements();
+        if (((head - 1) & (capacity - 1)) == tail) {
+            grow();
+            es = elements;
+        }
+        es.put(head = (head - 1) & (capacity - 1), e);
+        map.putInt(HEAD_OFFSET, head);
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * <p>This method is equivalent to {@link #add}.
+     *
+     * @param e the element to add
+     */
+    public void addLast(float e) {
+        FloatBuffer es = elements();
+        if (((tail + 1) & (capacity - 1)) == head) {
+            grow();
+            es = elements;
+        }
+        es.put(tail, e);
+        tail = (tail + 1) & (capacity - 1);
+        map.putInt(TAIL_OFFSET, tail);
+    }
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offerFirst(float e) {
+        addFirst(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offerLast(float e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public float removeFirst() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollFirst();
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public float removeLast() {
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return pollLast();
+    }
+
+    public float pollFirst() {
+        FloatBuffer es = elements();
+        int h = head;
+        if (h == tail) // isEmpty()
+            return NULL_VALUE;
+        float result = es.get(h);
+        head = (h + 1) & (capacity - 1);
+        map.putInt(HEAD_OFFSET, head);
+        return result;
+    }
+
+    public float pollLast() {
+        FloatBuffer es = elements();
+        if (head == tail) // isEmpty()
+            return NULL_VALUE;
+        int t = (tail - 1) & (capacity - 1);
+        float result = es.get(t);
+        tail = t;
+        map.putInt(TAIL_OFFSET, t);
+        return result;
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public float getFirst() {
+        FloatBuffer es = elements();
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return es.get(head);
+    }
+
+    /**
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public float getLast() {
+        FloatBuffer es = elements();
+        if (head == tail) // isEmpty()
+            throw new NoSuchElementException();
+        return es.get((tail - 1) & (capacity - 1));
+    }
+
+    public float peekFirst() {
+        FloatBuffer es = elements();
+        return head == tail ? NULL_VALUE : es.get(head);
+    }
+
+    public float peekLast() {
+        FloatBuffer es = elements();
+        return head == tail ? NULL_VALUE : es.get((tail - 1) & (capacity - 1));
+    }
+
+    // *** Queue methods ***
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean add(float e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param e the element to add
+     * @return {@code true}
+     */
+    public boolean offer(float e) {
+        return offerLast(e);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public float remove() {
+        return removeFirst();
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque,
+     * or returns {@code NULL_VALUE} if this deque is empty.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code NULL_VALUE} if this deque is empty
+     */
+    public float poll() {
+        return pollFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public float element() {
+        return getFirst();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque, or returns {@code NULL_VALUE} if this deque is empty.
+     *
+     * @return the head of the queue represented by this deque, or
+     *         {@code NULL_VALUE} if this deque is empty
+     */
+    public float peek() {
+        return peekFirst();
+    }
+
+    // *** Stack methods ***
+
+    /**
+     * Pushes an element onto the stack represented by this deque.
+     *
+     * @param e the element to push
+     */
+    public void push(float e) {
+        addFirst(e);
+    }
+
+    /**
+     * Pops an element from the stack represented by this deque.
+     *
+     * @return the element at the front of this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public float pop() {
+        return removeFirst();
+    }
+
+    // *** Collection Methods ***
+
+    /**
+     * Returns the element at the specified position in this deque, counting
+     * from the head.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this deque
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public float get(int index) {
+        FloatBuffer es = elements();
+        checkIndex(index);
+        return es.get((head + index) & (capacity - 1));
+    }
+
+    /**
+     * Replaces the element at the specified position in this deque, counting
+     * from the head, with the specified element.
+     *
+     * @param index index of the element to replace
+     * @param e element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public float set(int index, float e) {
+        FloatBuffer es = elements();
+        checkIndex(index);
+        int i = (head + index) & (capacity - 1);
+        float result = es.get(i);
+        es.put(i, e);
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        int size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque
+     */
+    public int size() {
+        return (tail - head) & (capacity - 1);
+    }
+
+    /**
+     * Returns the number of elements this deque can contain without increasing in size.
+     *
+     * @return the number of elements this deque can contain without increasing in size.
+     */
+    public int space() {
+        return capacity;
+    }
+
+    /**
+     * Returns {@code true} if this deque contains no elements.
+     *
+     * @return {@code true} if this deque contains no elements
+     */
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * Returns {@code true} if this deque contains the specified element.
+     *
+     * @param o float to be checked for containment in this deque
+     * @return {@code true} if this deque contains the specified element
+     */
+    public boolean contains(float o) {
+        FloatBuffer es = elements();
+        int mask = capacity - 1;
+        for (int i = head; i != tail; i = (i + 1) & mask) {
+            if (es.get(i) == o)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all of the elements from this deque.  The file keeps its size.
+     */
+    public void clear() {
+        elements();
+        head = tail; // a single store, unlike resetting both to zero
+        map.putInt(HEAD_OFFSET, head);
+    }
+
+    /**
+     * Returns an on-heap array containing all of the elements in this deque
+     * in proper sequence (from first to last element).
+     *
+     * @return an array containing all of the elements in this deque
+     */
+    public float[] toArray() {
+        FloatBuffer es = elements().duplicate();
+        float[] a = new float[size()];
+        int h = head;
+        int t = tail;
+        ((Buffer) es).position(h);
+        if (h <= t) {
+            es.get(a, 0, t - h);
+        } else {
+            int r = capacity - h;
+            es.get(a, 0, r);
+            ((Buffer) es).position(0);
+            es.get(a, r, t);
+        }
+        return a;
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque.  The elements
+     * will be ordered from first (head) to last (tail).
+     *
+     * @return an iterator over the elements in this deque
+     */
+    public FloatIterator iterator() {
+        return new DeqIterator();
+    }
+
+    private class DeqIterator implements FloatIterator {
+        /**
+         * Index of element to be returned by subsequent call to next.
+         */
+        private int cursor = head;
+
+        /**
+         * Tail recorded at construction, to stop iterator and also to
+         * check for comodification.
+         */
+        private final int fence = tail;
+
+        public boolean hasNext() {
+            return cursor != fence;
+        }
+
+        public float next() {
+            if (cursor == fence)
+                throw new NoSuchElementException();
+            FloatBuffer es = elements();
+            // This check doesn't catch all possible comodifications,
+            // but does catch the ones that corrupt traversal
+            if (tail != fence)
+                throw new ConcurrentModificationException();
+            float result = es.get(cursor);
+            cursor = (cursor + 1) & (capacity - 1);
+            return result;
+        }
+    }
+}
@@ -48,6 +48,7 @@ public class IntDequeUnsafe extends IntDeque {
 
     @Override
     void checkInvariants() {
+        assert (elements.length & (elements.length - 1)) == 0;
         assert elements[tail] == NULL_VALUE;
         
         assert elements[(head - 1) & (elements.length - 1)] == NULL_VALUE;
@@ -55,6 +56,7 @@ public class IntDequeUnsafe extends IntDeque {
     
     @Override
     public void jUnitAssertInvariants() {
+        InternalAssert.assertTrue((elements.length & (elements.length - 1)) == 0);
         InternalAssert.assertTrue(elements[tail] == NULL_VALUE);
         
         InternalAssert.assertTrue(elements[(head - 1) & (elements.length - 1)] == NULL_VALUE);
@@ -0,0 +1,79 @@
+package fallk.neatarrays;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/*
+ * The counters of the single-producer/single-consumer queues, each on a
+ * cache line of its own.  Superclass fields are laid out before subclass
+ * fields, so a chain of classes is the only reliable way to keep the JVM
+ * from packing the producer's and the consumer's counters together, which
+ * would make the two threads invalidate each other's cache line on every
+ * operation.
+ */
+
+abstract class SpscQueuePad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16;
+}
+
+abstract class SpscQueueProducerFields extends SpscQueuePad0 {
+    private static final AtomicLongFieldUpdater<SpscQueueProducerFields> PRODUCER_INDEX =
+            AtomicLongFieldUpdater.newUpdater(SpscQueueProducerFields.class, "producerIndex");
+
+    /** The number of elements ever offered; written by the producer only. */
+    private volatile long producerIndex;
+
+    /**
+     * The producer index up to which slots are known to be free, so the
+     * consumer's counter need not be read on every offer.
+     */
+    long producerLimit;
+
+    final long producerIndex() {
+        return producerIndex;
+    }
+
+    /**
+     * Publishes the elements written before index {@code i} to the consumer.
+     * An ordered store is all that is needed, as nothing on the producer's
+     * side waits for it.
+     */
+    final void lazySetProducerIndex(long i) {
+        PRODUCER_INDEX.lazySet(this, i);
+    }
+}
+
+abstract class SpscQueuePad1 extends SpscQueueProducerFields {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16;
+}
+
+abstract class SpscQueueConsumerFields extends SpscQueuePad1 {
+    private static final AtomicLongFieldUpdater<SpscQueueConsumerFields> CONSUMER_INDEX =
+            AtomicLongFieldUpdater.newUpdater(SpscQueueConsumerFields.class, "consumerIndex");
+
+    /** The number of elements ever polled; written by the consumer only. */
+    private volatile long consumerIndex;
+
+    /**
+     * The consumer index up to which slots are known to be filled, so the
+     * producer's counter need not be read on every poll.
+     */
+    long consumerLimit;
+
+    final long consumerIndex() {
+        return consumerIndex;
+    }
+
+    /**
+     * Hands the slots before index {@code i} back to the producer.
+     */
+    final void lazySetConsumerIndex(long i) {
+        CONSUMER_INDEX.lazySet(this, i);
+    }
+}
+
+abstract class SpscQueueFields extends SpscQueueConsumerFields {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16;
+}
@@ -0,0 +1,54 @@
+package fallk.neatarrays;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A per-thread hash code used to spread threads over the stripes of a
+ * striped queue, in the manner of the probe that {@code
+ * java.util.concurrent} keeps for {@code LongAdder}, which is not public.
+ * A thread that finds its stripe contended moves to another one by
+ * {@link #advance advancing} its probe.
+ */
+final class ThreadProbe {
+
+    private static final AtomicInteger SEEDER = new AtomicInteger();
+
+    private static final ThreadLocal<int[]> PROBE =
+            ThreadLocal.withInitial(() -> new int[] { mix(SEEDER.addAndGet(0x9e3779b9)) });
+
+    private ThreadProbe() {
+    }
+
+    /**
+     * Returns the probe of the current thread.
+     *
+     * @return the probe of the current thread, never zero
+     */
+    static int get() {
+        return PROBE.get()[0];
+    }
+
+    /**
+     * Moves the current thread to a pseudo-random new probe.
+     *
+     * @return the new probe of the current thread, never zero
+     */
+    static int advance() {
+        int[] p = PROBE.get();
+        int h = p[0];
+        h ^= h << 13; // xorshift
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return p[0] = h;
+    }
+
+    /** Scrambles a seed, as MurmurHash3's finalizer, into a non-zero probe. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h == 0 ? 1 : h;
+    }
+}
@@ -1,16 +1,54 @@
 package fallk.dev;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.IntSummaryStatistics;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import fallk.neatarrays.BooleanDeque;
+import fallk.neatarrays.ByteDeque;
+import fallk.neatarrays.CharBlockingQueue;
+import fallk.neatarrays.CharCircularBuffer;
+import fallk.neatarrays.CharDirectDeque;
+import fallk.neatarrays.CharIterator;
+import fallk.neatarrays.CharMappedDeque;
+import fallk.neatarrays.CharSpliterator;
+import fallk.neatarrays.CharSpscQueue;
+import fallk.neatarrays.CharStripedQueue;
+import fallk.neatarrays.CharWorkStealingDeque;
+import fallk.neatarrays.DequeStats;
+import fallk.neatarrays.IntMappedDeque;
+
 public class TestCharDeque {
     
     @Test
@@ -148,6 +186,1020 @@ public class TestCharDeque {
         checkSizeIs2(cd);
     }
 
+    @Test
+    public void safeSpliteratorPrimitiveTraversal() {
+        CharDeque cd = new CharDeque();
+
+        cd.addLast('c');
+        cd.addLast('d');
+        cd.addFirst('b');
+        cd.addFirst('a'); // head wraps around to the end of the array
+
+        StringBuilder sb = new StringBuilder();
+        cd.spliterator().forEachRemaining((IntConsumer) c -> sb.append((char) c));
+        Assert.assertEquals("abcd", sb.toString());
+
+        sb.setLength(0);
+        CharSpliterator it = cd.spliterator();
+        while (it.tryAdvance((IntConsumer) c -> sb.append((char) c))) { }
+        Assert.assertEquals("abcd", sb.toString());
+
+        cd.jUnitAssertInvariants();
+    }
+
+    @Test
+    public void safeStream() {
+        CharDeque cd = new CharDeque();
+
+        for (char c = 'a'; c <= 'z'; c++) {
+            cd.addLast(c);
+            cd.pollFirst(); // walk head and tail through the ring
+        }
+        long expected = 0;
+        for (char c = 'a'; c <= 'z'; c++) {
+            cd.addLast(c);
+            expected += c;
+        }
+
+        Assert.assertEquals(26, cd.stream().count());
+        Assert.assertEquals(expected, cd.stream().asLongStream().sum());
+        Assert.assertEquals(expected, cd.parallelStream().asLongStream().sum());
+        Assert.assertEquals("abcdefghijklmnopqrstuvwxyz", cd.parallelStream()
+                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString());
+
+        cd.jUnitAssertInvariants();
+    }
+
+    @Test
+    public void safeAddAllBulk() {
+        CharDeque cd = new CharDeque();
+
+        cd.addLast('x');
+        cd.addAllFirst(new char[] {'-', 'a', 'b', 'c', '-'}, 1, 3); // wraps the head
+        cd.addAllLast("defghijklmnopqrstuvwxyz".toCharArray()); // forces a single resize
+
+        Assert.assertArrayEquals("abcxdefghijklmnopqrstuvwxyz".toCharArray(), cd.toArray());
+        cd.jUnitAssertInvariants();
+
+        CharDeque other = new CharDeque();
+        other.addAllLast(new char[] {'1', '2'});
+        other.addAllFirst(other);
+        other.addAllLast(other);
+        Assert.assertArrayEquals("12121212".toCharArray(), other.toArray());
+        other.jUnitAssertInvariants();
+
+        cd.addAllFirst(other);
+        Assert.assertEquals(35, cd.size());
+        Assert.assertEquals('1', cd.getFirst());
+        Assert.assertEquals('z', cd.getLast());
+        cd.jUnitAssertInvariants();
+    }
+
+    @Test
+    public void safeBulkDrain() {
+        CharDeque cd = new CharDeque();
+
+        cd.addAllLast("defgh".toCharArray());
+        cd.addAllFirst("abc".toCharArray()); // head wraps around
+
+        char[] dst = new char[5];
+        Assert.assertEquals(4, cd.pollFirst(dst, 1, 4));
+        Assert.assertArrayEquals(new char[] {0, 'a', 'b', 'c', 'd'}, dst);
+        Assert.assertArrayEquals("efgh".toCharArray(), cd.toArray());
+        cd.jUnitAssertInvariants();
+
+        CharDeque other = new CharDeque();
+        other.add('z');
+        Assert.assertEquals(3, cd.drainTo(other, 3));
+        Assert.assertArrayEquals("zefg".toCharArray(), other.toArray());
+        Assert.assertEquals(1, cd.drainTo(other));
+        Assert.assertEquals(0, cd.pollFirst(dst, 0, 5));
+        checkSizeIs0(cd);
+        Assert.assertArrayEquals("zefgh".toCharArray(), other.toArray());
+        other.jUnitAssertInvariants();
+    }
+
+    @Test
+    public void safeSerializationRoundTrip() throws IOException, ClassNotFoundException {
+        CharDeque cd = new CharDeque();
+        for (int i = 0; i < 10000; i++) {
+            cd.addLast((char) ('a' + i % 26));
+        }
+        for (int i = 0; i < 5000; i++) {
+            cd.pollFirst();
+            cd.addLast('#'); // leaves the ring wrapped
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(cd);
+        }
+        CharDeque read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (CharDeque) in.readObject();
+        }
+        Assert.assertArrayEquals(cd.toArray(), read.toArray());
+        read.jUnitAssertInvariants();
+
+        bytes.reset();
+        cd.writeTo(new DataOutputStream(bytes));
+        Assert.assertEquals(8 + 2 * cd.size(), bytes.size());
+        CharDeque raw = new CharDeque();
+        raw.add('x');
+        raw.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertArrayEquals(cd.toArray(), raw.toArray());
+        raw.jUnitAssertInvariants();
+    }
+
+    @Test
+    public void safeTrimAndShrink() {
+        CharDeque cd = new CharDeque();
+        for (int i = 0; i < 1000; i++) {
+            cd.addLast('a');
+        }
+        Assert.assertEquals(1024, cd.space());
+        while (cd.size() > 10) {
+            cd.pollFirst();
+        }
+        Assert.assertEquals(1024, cd.space());
+        cd.trimToSize();
+        Assert.assertEquals(16, cd.space());
+        checkSizeIs(cd, 10);
+
+        for (int i = 0; i < 1000; i++) {
+            cd.addFirst('b');
+        }
+        cd.setShrinkThreshold(0.25f);
+        char[] dst = new char[1000];
+        Assert.assertEquals(1000, cd.pollFirst(dst, 0, 1000));
+        Assert.assertEquals(32, cd.space()); // smallest capacity at least a quarter full
+        checkSizeIs(cd, 10);
+        while (cd.size() > 1) {
+            cd.pollLast();
+        }
+        Assert.assertEquals(8, cd.space());
+        checkSizeIs(cd, 1);
+
+        try {
+            cd.setShrinkThreshold(0.5f);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void checkSizeIs(CharDeque cd, int size) {
+        Assert.assertEquals(size, cd.size());
+        for (char c : cd.toArray()) {
+            Assert.assertNotEquals(Character.MIN_VALUE, c);
+        }
+        cd.jUnitAssertInvariants();
+    }
+
+    @Test
+    public void safeEnsureCapacity() {
+        CharDeque cd = new CharDeque();
+        cd.addLast('b');
+        cd.addFirst('a'); // head wraps around
+
+        cd.ensureCapacity(1000);
+        Assert.assertEquals(1024, cd.space());
+        Assert.assertArrayEquals(new char[] {'a', 'b'}, cd.toArray());
+        cd.jUnitAssertInvariants();
+
+        cd.ensureCapacity(1023);
+        cd.ensureCapacity(-1);
+        Assert.assertEquals(1024, cd.space());
+        cd.ensureCapacity(1024);
+        Assert.assertEquals(2048, cd.space());
+
+        try {
+            cd.ensureCapacity(1 << 30);
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+        checkSizeIs(cd, 2);
+    }
+
+    @Test
+    public void safeIndexedAccess() {
+        CharDeque cd = new CharDeque();
+        cd.addAllLast("cdef".toCharArray());
+        cd.addAllFirst("ab".toCharArray()); // head wraps around
+
+        Assert.assertEquals('a', cd.get(0));
+        Assert.assertEquals('f', cd.get(5));
+        Assert.assertEquals('c', cd.set(2, 'C'));
+        Assert.assertArrayEquals("abCdef".toCharArray(), cd.toArray());
+
+        Assert.assertEquals('b', cd.removeAt(1));
+        Assert.assertEquals('e', cd.removeAt(3));
+        Assert.assertArrayEquals("aCdf".toCharArray(), cd.toArray());
+        Assert.assertTrue(cd.remove('d'));
+        Assert.assertArrayEquals("aCf".toCharArray(), cd.toArray());
+        checkSizeIs(cd, 3);
+
+        for (int index : new int[] {-1, 3}) {
+            try {
+                cd.get(index);
+                Assert.fail();
+            } catch (IndexOutOfBoundsException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void safeRemoveIf() {
+        CharDeque cd = new CharDeque();
+        cd.addAllLast("fghij".toCharArray());
+        cd.addAllFirst("abcde".toCharArray()); // head wraps around
+
+        Assert.assertFalse(cd.removeIf(c -> c == 'z'));
+        Assert.assertTrue(cd.removeIf(c -> (c - 'a') % 3 == 1));
+        Assert.assertArrayEquals("acdfgij".toCharArray(), cd.toArray());
+        checkSizeIs(cd, 7);
+
+        Assert.assertTrue(cd.removeAll("xgca".toCharArray()));
+        Assert.assertArrayEquals("dfij".toCharArray(), cd.toArray());
+        Assert.assertTrue(cd.retainAll("jfx".toCharArray()));
+        Assert.assertArrayEquals("fj".toCharArray(), cd.toArray());
+        Assert.assertFalse(cd.retainAll(cd));
+        checkSizeIs(cd, 2);
+
+        cd.addAllLast("klmn".toCharArray());
+        try {
+            cd.removeIf(c -> {
+                if (c == 'l')
+                    throw new IllegalStateException();
+                return c == 'f' || c == 'm';
+            });
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertArrayEquals("jklmn".toCharArray(), cd.toArray());
+        checkSizeIs(cd, 5);
+
+        Assert.assertTrue(cd.removeAll(cd));
+        checkSizeIs0(cd);
+    }
+
+    @Test
+    public void safeSearch() {
+        CharDeque cd = new CharDeque();
+        cd.addAllLast("cabc".toCharArray());
+        cd.addAllFirst("ab".toCharArray()); // head wraps around
+
+        Assert.assertEquals(0, cd.indexOf('a'));
+        Assert.assertEquals(3, cd.lastIndexOf('a'));
+        Assert.assertEquals(2, cd.indexOf('c'));
+        Assert.assertEquals(5, cd.lastIndexOf('c'));
+        Assert.assertEquals(-1, cd.indexOf('z'));
+        Assert.assertEquals(-1, cd.lastIndexOf('z'));
+        Assert.assertTrue(cd.contains('c'));
+        Assert.assertFalse(cd.contains('z'));
+
+        Assert.assertTrue(cd.removeLastOccurrence('b'));
+        Assert.assertTrue(cd.removeFirstOccurrence('c'));
+        Assert.assertFalse(cd.removeFirstOccurrence('z'));
+        Assert.assertArrayEquals("abac".toCharArray(), cd.toArray());
+        checkSizeIs(cd, 4);
+    }
+
+    @Test
+    public void safeAggregates() {
+        CharDeque cd = new CharDeque();
+        cd.addAllLast("mxz".toCharArray());
+        cd.addAllFirst("bca".toCharArray()); // head wraps around
+
+        long sum = 'a' + 'b' + 'c' + 'm' + 'x' + 'z';
+        Assert.assertEquals(sum, cd.sum());
+        Assert.assertEquals('a', cd.min());
+        Assert.assertEquals('z', cd.max());
+        Assert.assertEquals(sum / 6.0, cd.average(), 0);
+        IntSummaryStatistics stats = cd.summaryStatistics();
+        Assert.assertEquals(6, stats.getCount());
+        Assert.assertEquals(sum, stats.getSum());
+
+        Assert.assertEquals(sum, cd.parallelSum());
+        Assert.assertEquals('a', cd.parallelMin());
+        Assert.assertEquals('z', cd.parallelMax());
+        Assert.assertEquals(sum / 6.0, cd.parallelAverage(), 0);
+        Assert.assertEquals('z', cd.parallelSummaryStatistics().getMax());
+
+        cd.clear();
+        Assert.assertEquals(0, cd.sum());
+        try {
+            cd.min();
+            Assert.fail();
+        } catch (NoSuchElementException expected) {
+        }
+        try {
+            cd.parallelAverage();
+            Assert.fail();
+        } catch (NoSuchElementException expected) {
+        }
+        // doubles are summed with compensation, in sequence as in parallel
+        fallk.neatarrays.DoubleDeque dd = new fallk.neatarrays.DoubleDeque();
+        DoubleSummaryStatistics expected = new DoubleSummaryStatistics();
+        dd.add(1.0);
+        expected.accept(1.0);
+        for (int i = 0; i < 10; i++) {
+            dd.add(1e-16); // lost one by one in a naive sum
+            expected.accept(1e-16);
+        }
+        Assert.assertEquals(expected.getSum(), dd.sum(), 0);
+        Assert.assertNotEquals(1.0, dd.sum(), 0);
+        Assert.assertEquals(dd.parallelSum(), dd.sum(), 1e-15);
+        Assert.assertEquals(expected.getAverage(), dd.average(), 0);
+    }
+
+    @Test
+    public void safeSortAndSearch() {
+        CharDeque cd = new CharDeque();
+        cd.addAllLast("qmxcz".toCharArray());
+        cd.addAllFirst("fdt".toCharArray()); // head wraps around
+
+        char[] array = cd.elements;
+        DequeStats stats = cd.enableStats();
+        long allocated = stats.allocatedBytes();
+        cd.sort();
+        Assert.assertArrayEquals("cdfmqtxz".toCharArray(), cd.toArray());
+        checkSizeIs(cd, 8);
+        Assert.assertSame(array, cd.elements); // rotated in place
+        Assert.assertEquals(allocated, stats.allocatedBytes());
+        Assert.assertEquals(3, cd.binarySearch('m'));
+        Assert.assertEquals(-4, cd.binarySearch('g'));
+
+        cd.addAllFirst("ab".toCharArray()); // still sorted, now wrapped
+        Assert.assertEquals(0, cd.binarySearch('a'));
+        Assert.assertEquals(2, cd.binarySearch('c'));
+        Assert.assertEquals(9, cd.binarySearch('z'));
+        Assert.assertEquals(-1, cd.binarySearch('0'));
+        Assert.assertEquals(-5, cd.binarySearch('e'));
+        Assert.assertEquals(-10, cd.binarySearch('y'));
+        Assert.assertEquals(-11, cd.binarySearch('~'));
+
+        cd.pollFirst();
+        cd.addLast('a');
+        cd.parallelSort();
+        Assert.assertArrayEquals("abcdfmqtxz".toCharArray(), cd.toArray());
+        checkSizeIs(cd, 10);
+    }
+
+    @Test
+    public void directDeque() {
+        CharDirectDeque dd = new CharDirectDeque(4);
+        for (char c = 'a'; c <= 'z'; c++) {
+            dd.addLast(c);
+            dd.addFirst(Character.toUpperCase(c)); // grows while wrapped
+        }
+        Assert.assertEquals(52, dd.size());
+        Assert.assertEquals(64, dd.space());
+        Assert.assertEquals('Z', dd.peekFirst());
+        Assert.assertEquals('z', dd.peekLast());
+        Assert.assertEquals('A', dd.get(25));
+        Assert.assertEquals('a', dd.set(26, '!'));
+        Assert.assertTrue(dd.contains('!'));
+        Assert.assertFalse(dd.contains('a'));
+
+        char[] all = dd.toArray();
+        Assert.assertEquals(52, all.length);
+        Assert.assertEquals('!', all[26]);
+        CharIterator it = dd.iterator();
+        for (char c : all)
+            Assert.assertEquals(c, it.next());
+        Assert.assertFalse(it.hasNext());
+
+        Assert.assertEquals('Z', dd.pop());
+        Assert.assertEquals('z', dd.pollLast());
+        dd.clear();
+        Assert.assertTrue(dd.isEmpty());
+        Assert.assertEquals(Character.MIN_VALUE, dd.poll());
+
+        for (int i = 0; i < 60; i++) {
+            dd.addLast('-');
+            dd.pollFirst();
+        }
+        dd.addAllLast("cdefgh".toCharArray()); // wraps around the end
+        dd.addAllFirst("xxab".toCharArray(), 2, 2);
+        Assert.assertEquals("abcdefgh", new String(dd.toArray()));
+        dd.addAllLast(new char[60]); // grows once, linearising the ring
+        Assert.assertEquals(128, dd.space());
+        Assert.assertEquals(2, dd.indexOf('c'));
+        Assert.assertEquals(67, dd.lastIndexOf(Character.MIN_VALUE));
+        Assert.assertEquals(-1, dd.indexOf('z'));
+        char[] dst = new char[10];
+        Assert.assertEquals(8, dd.pollFirst(dst, 2, 8));
+        Assert.assertEquals("abcdefgh", new String(dst, 2, 8));
+        Assert.assertEquals(60, dd.size());
+        dd.ensureCapacity(200);
+        Assert.assertEquals(256, dd.space());
+        Assert.assertEquals(60, dd.size());
+        dd.clear();
+
+        dd.close();
+        Assert.assertFalse(dd.isOpen());
+        dd.close();
+        try {
+            dd.add('x');
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            dd.addFirst('x');
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            dd.pollFirst();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected, even though the deque looks empty
+        }
+        try {
+            dd.size();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void mappedDeque() throws IOException {
+        Path file = Files.createTempFile("chardeque", ".bin");
+        try {
+            CharMappedDeque md = CharMappedDeque.open(file, 4);
+            for (char c : "fghijklmnop".toCharArray())
+                md.addLast(c);
+            md.addFirst('e');
+            md.pollLast();
+            Assert.assertEquals(11, md.size());
+            Assert.assertEquals(16, md.space());
+            md.force();
+            md.close();
+            Assert.assertFalse(md.isOpen());
+
+            md = CharMappedDeque.open(file);
+            Assert.assertEquals("efghijklmno", new String(md.toArray()));
+            for (char c = 'd'; c >= 'a'; c--)
+                md.addFirst(c);
+            md.addLast('p'); // grows with the ring wrapped
+            Assert.assertEquals(32, md.space());
+            Assert.assertEquals('a', md.pop());
+            Assert.assertEquals('b', md.get(0));
+            md.close();
+
+            md = CharMappedDeque.open(file);
+            Assert.assertEquals("bcdefghijklmnop", new String(md.toArray()));
+            md.close();
+
+            try {
+                IntMappedDeque.open(file).close();
+                Assert.fail();
+            } catch (IOException e) {
+                // expected: the file holds chars
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void mappedDequeCrashDuringGrowth() throws IOException {
+        Path file = Files.createTempFile("chardeque", ".bin");
+        try {
+            CharMappedDeque md = CharMappedDeque.open(file, 8);
+            for (int i = 0; i < 8; i++) {
+                md.addLast('-');
+                md.pollFirst();
+            }
+            for (char c : "abcdefghijklmno".toCharArray()) // wraps, one slot left
+                md.addLast(c);
+            md.close();
+            ByteBuffer before = ByteBuffer.allocate(16);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                ch.read(before, 16);
+            }
+
+            md = CharMappedDeque.open(file);
+            md.addLast('p'); // grows and moves the wrapped part
+            Assert.assertEquals(32, md.space());
+            md.close();
+
+            // put back the header as it was before the growth was committed,
+            // as if the process died right before that store
+            before.flip();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.write(before, 16);
+            }
+            md = CharMappedDeque.open(file);
+            Assert.assertEquals(16, md.space());
+            Assert.assertEquals("abcdefghijklmno", new String(md.toArray()));
+            md.addLast('p');
+            Assert.assertEquals("abcdefghijklmnop", new String(md.toArray()));
+            md.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void spscQueue() throws InterruptedException {
+        CharSpscQueue q = new CharSpscQueue(5);
+        Assert.assertEquals(8, q.capacity());
+        Assert.assertEquals(6, q.offer("abcdef".toCharArray(), 0, 6));
+        Assert.assertEquals('a', q.poll());
+        Assert.assertEquals(3, q.offer("ghij".toCharArray(), 0, 4)); // wraps around, fills up
+        Assert.assertFalse(q.offer('k'));
+        Assert.assertEquals(8, q.size());
+        char[] dst = new char[10];
+        Assert.assertEquals(6, q.drain(dst, 0, 6));
+        Assert.assertEquals("bcdefg", new String(dst, 0, 6));
+        StringBuilder sb = new StringBuilder();
+        Assert.assertEquals(2, q.drain(c -> sb.append((char) c), 10));
+        Assert.assertEquals("hi", sb.toString());
+        Assert.assertTrue(q.isEmpty());
+        Assert.assertEquals(Character.MIN_VALUE, q.poll());
+
+        // one producer thread, one consumer thread
+        final int count = 200000;
+        Thread producer = new Thread(() -> {
+            char[] batch = new char[7];
+            int i = 0;
+            while (i < count) {
+                if ((i & 1) == 0) {
+                    while (!q.offer((char) (1 + i % 60000)))
+                        Thread.yield();
+                    i++;
+                } else {
+                    int n = Math.min(batch.length, count - i);
+                    for (int j = 0; j < n; j++)
+                        batch[j] = (char) (1 + (i + j) % 60000);
+                    for (int off = 0, k; off < n; off += k) {
+                        if ((k = q.offer(batch, off, n - off)) == 0)
+                            Thread.yield();
+                    }
+                    i += n;
+                }
+            }
+        });
+        producer.start();
+        char[] batch = new char[5];
+        int i = 0;
+        while (i < count) {
+            int n = q.drain(batch, 0, batch.length);
+            for (int j = 0; j < n; j++, i++)
+                Assert.assertEquals((char) (1 + i % 60000), batch[j]);
+            char c = q.poll();
+            if (c != Character.MIN_VALUE)
+                Assert.assertEquals((char) (1 + i++ % 60000), c);
+            else if (n == 0)
+                Thread.yield();
+        }
+        producer.join();
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void blockingQueue() throws InterruptedException {
+        CharBlockingQueue q = new CharBlockingQueue(3);
+        Assert.assertEquals(4, q.capacity());
+        for (char c : "abcd".toCharArray())
+            Assert.assertTrue(q.offer(c));
+        Assert.assertFalse(q.offer('e'));
+        Assert.assertFalse(q.offer('e', 1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, q.remainingCapacity());
+        Assert.assertEquals('a', q.peek());
+        Assert.assertEquals('a', q.take());
+        fallk.neatarrays.CharDeque cd = new fallk.neatarrays.CharDeque();
+        Assert.assertEquals(2, q.drainTo(cd, 2));
+        Assert.assertEquals(1, q.drainTo(cd));
+        Assert.assertArrayEquals("bcd".toCharArray(), cd.toArray());
+        Assert.assertEquals(Character.MIN_VALUE, q.poll());
+        Assert.assertEquals(Character.MIN_VALUE, q.poll(1, TimeUnit.MILLISECONDS));
+
+        // producers and consumers that keep blocking on a tiny queue
+        final int threads = 3, count = 20000;
+        int[] seen = new int[threads * count];
+        List<Thread> all = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int base = t * count;
+            all.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++)
+                        q.put((char) (base + i + 1));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+            all.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        char c = (i & 1) == 0 ? q.take() : q.poll(1, TimeUnit.MINUTES);
+                        synchronized (seen) {
+                            seen[c - 1]++;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        for (Thread t : all)
+            t.start();
+        for (Thread t : all)
+            t.join();
+        for (int s : seen)
+            Assert.assertEquals(1, s);
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void workStealingDeque() throws InterruptedException {
+        CharWorkStealingDeque wd = new CharWorkStealingDeque(4);
+        Assert.assertEquals(Character.MIN_VALUE, wd.pop());
+        Assert.assertEquals(Character.MIN_VALUE, wd.steal());
+        for (char c = 'a'; c <= 'j'; c++)
+            wd.push(c); // grows
+        Assert.assertEquals(16, wd.space());
+        Assert.assertEquals('j', wd.pop());
+        Assert.assertEquals('a', wd.steal());
+        Assert.assertEquals(8, wd.size());
+
+        // the owner pushes and pops while thieves steal
+        final int count = 50000;
+        int[] seen = new int[count + 1];
+        seen['b']--; // still in the deque from above
+        for (char c = 'c'; c <= 'i'; c++)
+            seen[c]--;
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> thieves = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            thieves.add(new Thread(() -> {
+                while (!done.get() || !wd.isEmpty()) {
+                    char c = wd.steal();
+                    if (c != Character.MIN_VALUE) {
+                        synchronized (seen) {
+                            seen[c]++;
+                        }
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (Thread t : thieves)
+            t.start();
+        for (int i = 1; i <= count; i++) {
+            wd.push((char) i);
+            if (i % 3 == 0) {
+                char c = wd.pop();
+                if (c != Character.MIN_VALUE) {
+                    synchronized (seen) {
+                        seen[c]++;
+                    }
+                }
+            }
+        }
+        done.set(true);
+        for (Thread t : thieves)
+            t.join();
+        for (int i = 1; i <= count; i++)
+            Assert.assertEquals(1, seen[i]);
+    }
+
+    @Test
+    public void stripedQueue() throws InterruptedException {
+        CharStripedQueue q = new CharStripedQueue(3);
+        Assert.assertEquals(4, q.stripes());
+        Assert.assertTrue(q.isEmpty());
+        Assert.assertEquals(Character.MIN_VALUE, q.poll());
+        for (char c = 'a'; c <= 'e'; c++)
+            q.offer(c); // one thread, so one stripe, so in order
+        Assert.assertEquals(5, q.size());
+        Assert.assertEquals('a', q.poll());
+        char[] dst = new char[3];
+        Assert.assertEquals(3, q.drain(dst, 0, 3));
+        Assert.assertEquals("bcd", new String(dst));
+        StringBuilder sb = new StringBuilder();
+        Assert.assertEquals(1, q.drain(c -> sb.append((char) c), 10));
+        Assert.assertEquals("e", sb.toString());
+
+        // many producers, one consumer
+        final int producers = 8, count = 5000;
+        int[] seen = new int[producers * count + 1];
+        List<Thread> all = new ArrayList<>();
+        for (int t = 0; t < producers; t++) {
+            final int base = t * count;
+            all.add(new Thread(() -> {
+                for (int i = 1; i <= count; i++)
+                    q.offer((char) (base + i));
+            }));
+        }
+        for (Thread t : all)
+            t.start();
+        int n = 0;
+        while (n < producers * count) {
+            int k = q.drain(c -> seen[c]++, 100);
+            if (k == 0)
+                Thread.yield();
+            n += k;
+        }
+        for (Thread t : all)
+            t.join();
+        for (int i = 1; i < seen.length; i++)
+            Assert.assertEquals(1, seen[i]);
+        Assert.assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void circularBuffer() {
+        CharCircularBuffer cb = new CharCircularBuffer(5);
+        Assert.assertEquals(5, cb.capacity());
+        Assert.assertEquals(Character.MIN_VALUE, cb.addLastEvicting('a'));
+        for (char c = 'b'; c <= 'e'; c++)
+            cb.addLast(c);
+        Assert.assertTrue(cb.isFull());
+        Assert.assertEquals('a', cb.addLastEvicting('f'));
+        for (char c = 'g'; c <= 'k'; c++)
+            cb.addLast(c); // wraps around the ring
+        Assert.assertEquals(5, cb.size());
+        Assert.assertArrayEquals("ghijk".toCharArray(), cb.toArray());
+        Assert.assertEquals('g', cb.peekFirst());
+        Assert.assertEquals('k', cb.peekLast());
+        Assert.assertEquals('i', cb.get(2));
+        StringBuilder sb = new StringBuilder();
+        for (CharIterator it = cb.iterator(); it.hasNext(); )
+            sb.append(it.next());
+        Assert.assertEquals("ghijk", sb.toString());
+
+        Assert.assertEquals('g', cb.poll());
+        Assert.assertEquals('k', cb.pollLast());
+        Assert.assertFalse(cb.isFull());
+        Assert.assertEquals(Character.MIN_VALUE, cb.addLastEvicting('l'));
+        Assert.assertArrayEquals("hijl".toCharArray(), cb.toArray());
+        cb.clear();
+        Assert.assertTrue(cb.isEmpty());
+        Assert.assertEquals(Character.MIN_VALUE, cb.peek());
+    }
+
+    @Test
+    public void booleanAndByteDeques() throws IOException, ClassNotFoundException {
+        BooleanDeque bd = new BooleanDeque();
+        Assert.assertEquals(64, bd.space());
+        for (int i = 0; i < 50; i++)
+            bd.addLast(i % 3 == 0);
+        for (int i = 0; i < 30; i++)
+            bd.addFirst(i % 5 == 0); // wraps around, then grows unaligned
+        Assert.assertEquals(80, bd.size());
+        Assert.assertEquals(128, bd.space());
+        boolean[] expected = new boolean[80];
+        for (int i = 0; i < 30; i++)
+            expected[29 - i] = i % 5 == 0;
+        for (int i = 0; i < 50; i++)
+            expected[30 + i] = i % 3 == 0;
+        Assert.assertArrayEquals(expected, bd.toArray());
+        Assert.assertEquals(6 + 17, bd.cardinality());
+        Assert.assertTrue(bd.get(29));
+        Assert.assertTrue(bd.set(30, false));
+        expected[30] = false;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(bd);
+        }
+        BooleanDeque copy = (BooleanDeque) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        Assert.assertArrayEquals(expected, copy.toArray());
+        Assert.assertEquals(bd.cardinality(), copy.cardinality());
+
+        boolean[] seen = new boolean[80];
+        int[] n = { 0 };
+        copy.spliterator().forEachRemaining(b -> seen[n[0]++] = b);
+        Assert.assertArrayEquals(expected, seen);
+        for (int i = 0; i < 5; i++)
+            Assert.assertEquals(expected[i], copy.pollFirst());
+        for (int i = 79; i > 75; i--)
+            Assert.assertEquals(expected[i], copy.pollLast());
+        copy.clear();
+        Assert.assertFalse(copy.contains(false));
+        Assert.assertFalse(copy.poll());
+
+        ByteDeque byd = new ByteDeque();
+        byd.addAllLast(new byte[] { 3, 1, 2 });
+        byd.sort();
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, byd.toArray());
+        Assert.assertEquals(6, byd.sum());
+    }
+
+    @Test
+    public void byteDequeChannels() throws IOException {
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i + 1);
+
+        // plain channels: segment by segment
+        ByteDeque bd = new ByteDeque(8); // 16 slots
+        for (int i = 0; i < 10; i++)
+            bd.addLast((byte) 0);
+        for (int i = 0; i < 10; i++)
+            bd.pollFirst(); // head and tail at 10, so the free part wraps
+        ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(data));
+        Assert.assertEquals(15, bd.read(in));
+        Assert.assertEquals(15, bd.size());
+        Assert.assertEquals(16, bd.read(in)); // grown first
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Assert.assertEquals(31, bd.write(Channels.newChannel(bytes)));
+        Assert.assertTrue(bd.isEmpty());
+        while (bd.read(in) >= 0) {
+            // read the rest
+        }
+        Assert.assertEquals(69, bd.size());
+        bd.write(Channels.newChannel(bytes));
+        Assert.assertArrayEquals(data, bytes.toByteArray());
+
+        // file channels: scattering and gathering
+        Path file = Files.createTempFile("bytedeque", ".bin");
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            bd = new ByteDeque(8);
+            for (int i = 0; i < 12; i++)
+                bd.addLast((byte) 0);
+            for (int i = 0; i < 12; i++)
+                bd.pollFirst();
+            bd.addAllLast(data, 0, 10); // wraps around
+            Assert.assertEquals(10, bd.write(fc));
+            fc.write(ByteBuffer.wrap(data, 10, 90));
+            fc.position(0);
+            Assert.assertEquals(15, bd.read(fc)); // wraps around
+            Assert.assertEquals(85, bd.read(fc) + bd.read(fc) + bd.read(fc));
+            Assert.assertEquals(-1, bd.read(fc));
+            Assert.assertArrayEquals(data, bd.toArray());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void byteDequeReadBlockingPipe() throws IOException {
+        Pipe pipe = Pipe.open();
+        try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel source = pipe.source()) {
+            ByteDeque bd = new ByteDeque(8); // 16 slots
+            for (int i = 0; i < 10; i++) {
+                bd.addLast((byte) 0);
+                bd.pollFirst(); // the free part wraps
+            }
+            sink.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+            Assert.assertEquals(3, bd.read(source)); // scattering
+            // a channel that cannot scatter reads the segments one by one
+            ReadableByteChannel plain = new ReadableByteChannel() {
+                public int read(ByteBuffer dst) throws IOException {
+                    return source.read(dst);
+                }
+
+                public boolean isOpen() {
+                    return source.isOpen();
+                }
+
+                public void close() throws IOException {
+                    source.close();
+                }
+            };
+            sink.write(ByteBuffer.wrap(new byte[] { 4, 5 }));
+            Assert.assertEquals(2, bd.read(plain)); // less than the first segment
+            sink.write(ByteBuffer.wrap(new byte[] { 6, 7, 8, 9 }));
+            Assert.assertEquals(4, bd.read(plain)); // fills the first segment, then wraps
+            Assert.assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }, bd.toArray());
+            bd.jUnitAssertInvariants();
+        }
+    }
+
+    @Test
+    public void safeCharSequence() throws IOException {
+        CharDeque cd = new CharDeque(8);
+        cd.append("0123456789");
+        for (int i = 0; i < 10; i++)
+            cd.pollFirst();
+        cd.append("hello, ").append(new StringBuilder("wrapped")).append(' ')
+                .append("xxworld", 2, 7); // wraps around the end of the array
+        checkSizeIs(cd, 20);
+        Assert.assertEquals("hello, wrapped world", cd.toString());
+        Assert.assertEquals(20, cd.length());
+        Assert.assertEquals('w', cd.charAt(7));
+        CharSequence sub = cd.subSequence(7, 14);
+        Assert.assertEquals("wrapped", sub.toString());
+        Assert.assertEquals("rap", sub.subSequence(1, 4).toString());
+        Assert.assertTrue(Pattern.compile("w\\w+d").matcher(cd).find());
+        cd.append(cd, 0, 5);
+        Assert.assertEquals("hello, wrapped worldhello", cd.toString());
+        cd.append(null);
+        Assert.assertTrue(cd.toString().endsWith("null"));
+
+        Writer w = cd.writer();
+        w.write(" and more");
+        w.write(new char[] { '!', '?' }, 0, 1);
+        Reader r = cd.reader();
+        Assert.assertEquals(5, r.skip(5));
+        char[] buf = new char[8];
+        Assert.assertEquals(8, r.read(buf));
+        Assert.assertEquals(", wrappe", new String(buf));
+        StringBuilder rest = new StringBuilder();
+        for (int c; (c = r.read()) >= 0; )
+            rest.append((char) c);
+        Assert.assertEquals("d worldhellonull and more!", rest.toString());
+        Assert.assertFalse(r.ready());
+        Assert.assertEquals(-1, r.read(buf));
+        cd.jUnitAssertInvariants();
+
+        CharDeque self = new CharDeque(8);
+        self.append("0123456789");
+        for (int i = 0; i < 10; i++)
+            self.pollFirst();
+        self.append("abcdefghij"); // wraps around the end of the array
+        self.append(self, 2, 9); // grows while appending a wrapped range of itself
+        Assert.assertEquals("abcdefghijcdefghi", self.toString());
+        self.append(self);
+        Assert.assertEquals("abcdefghijcdefghiabcdefghijcdefghi", self.toString());
+        self.jUnitAssertInvariants();
+
+        self.setShrinkThreshold(0.25f);
+        int space = self.space();
+        Assert.assertEquals(30, self.reader().skip(30));
+        Assert.assertTrue(self.space() < space); // skipping shrinks like polling
+        Assert.assertEquals("fghi", self.toString());
+        self.jUnitAssertInvariants();
+    }
+
+    @Test
+    public void safeDecode() {
+        CharDeque cd = new CharDeque(8);
+        for (int i = 0; i < 14; i++)
+            cd.addLast('-');
+        cd.pollFirst(new char[14], 0, 14); // two free slots left before the end
+        CharsetDecoder dec = StandardCharsets.UTF_8.newDecoder();
+        String s = "x😀"; // the surrogate pair straddles the end
+        Assert.assertTrue(cd.decode(dec, ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)), false).isUnderflow());
+        Assert.assertEquals(s, cd.toString());
+        cd.jUnitAssertInvariants();
+
+        byte[] euro = "é€".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer in = ByteBuffer.wrap(euro); // split inside the euro sign
+        in.limit(3);
+        Assert.assertTrue(cd.decode(dec, in, false).isUnderflow());
+        Assert.assertEquals(1, in.remaining());
+        in.limit(euro.length);
+        StringBuilder more = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            more.append("über😀 "); // enough to make the deque grow
+        ByteBuffer rest = ByteBuffer.allocate(3 + more.length() * 4).put(in)
+                .put(more.toString().getBytes(StandardCharsets.UTF_8));
+        rest.flip();
+        Assert.assertTrue(cd.decode(dec, rest, true).isUnderflow());
+        Assert.assertFalse(rest.hasRemaining());
+        Assert.assertEquals(s + "é€" + more, cd.toString());
+        cd.jUnitAssertInvariants();
+
+        CharDeque bad = new CharDeque();
+        CoderResult cr = bad.decode(StandardCharsets.UTF_8.newDecoder(),
+                ByteBuffer.wrap(new byte[] { 'o', 'k', (byte) 0xff, 'x' }), true);
+        Assert.assertTrue(cr.isMalformed());
+        Assert.assertEquals("ok", bad.toString());
+    }
+
+    @Test
+    public void dequeStats() {
+        Assert.assertTrue(DequeStats.ENABLED); // set by the surefire configuration
+        CharDeque cd = new CharDeque(8);
+        Assert.assertNull(cd.stats());
+        DequeStats stats = cd.enableStats();
+        Assert.assertSame(stats, cd.enableStats());
+        List<String> events = new ArrayList<>();
+        stats.setListener((s, from, to) -> events.add(from + "->" + to));
+        Assert.assertEquals(16 * Character.BYTES, stats.allocatedBytes());
+
+        for (int i = 0; i < 20; i++)
+            cd.addLast('a');
+        char[] bs = new char[20];
+        Arrays.fill(bs, 'b'); // not NULL_VALUE, which marks free slots
+        cd.addAllFirst(bs);
+        cd.jUnitAssertInvariants();
+        Assert.assertEquals(Arrays.asList("16->32", "32->64"), events);
+        Assert.assertEquals(2, stats.growths());
+        Assert.assertEquals(40, stats.peakSize());
+        Assert.assertEquals((16 + 32 + 64) * Character.BYTES, stats.allocatedBytes());
+
+        cd.pollFirst(new char[30], 0, 30);
+        cd.trimToSize();
+        Assert.assertEquals(1, stats.shrinks());
+        Assert.assertEquals(40, stats.peakSize());
+        Assert.assertSame(stats, cd.stats());
+        Assert.assertEquals(10, stats.size());
+        Assert.assertEquals(16, stats.capacity());
+        Assert.assertEquals(10 / 16f, stats.fillRatio(), 0f);
+        Assert.assertNull(cd.clone().stats());
+        cd.jUnitAssertInvariants();
+    }
+
     private void checkSizeIs3(CharDeque cd) {
         Assert.assertFalse(cd.isEmpty());
         Assert.assertTrue(cd.size() == 3);